@@ -0,0 +1,42 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This enum names the {@link ModularMultiplier} implementations a key can
+ * decrypt with. It is chosen through
+ * {@link KnapsackParameters.Builder#arithmetic(ArithmeticBackend)}.
+ *
+ * @author Anshu Anand
+ */
+public enum ArithmeticBackend {
+
+    /**
+     * General BigInteger multiply and mod.
+     */
+    BIG_INTEGER {
+        @Override
+        public ModularMultiplier create(BigInteger factor, BigInteger modulus) {
+            return new BigIntegerMultiplier(factor, modulus);
+        }
+    },
+    /**
+     * Montgomery multiplication on fixed width limbs, specialized to the
+     * modulus.
+     */
+    MONTGOMERY {
+        @Override
+        public ModularMultiplier create(BigInteger factor, BigInteger modulus) {
+            return new MontgomeryMultiplier(factor, modulus);
+        }
+    };
+
+    /**
+     * This method creates a multiplier of this backend.
+     *
+     * @param factor the number every input is multiplied by
+     * @param modulus the modulus
+     * @return the multiplier
+     */
+    public abstract ModularMultiplier create(BigInteger factor, BigInteger modulus);
+}
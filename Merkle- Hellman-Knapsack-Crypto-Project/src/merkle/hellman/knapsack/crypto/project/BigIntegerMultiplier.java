@@ -0,0 +1,42 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This class multiplies modulo q with the general BigInteger multiply and
+ * mod, the arithmetic decryption has always used.
+ *
+ * @author Anshu Anand
+ */
+public class BigIntegerMultiplier implements ModularMultiplier {
+
+    private final BigInteger factor;
+    private final BigInteger modulus;
+
+    /**
+     * This is the constructor for the multiplier.
+     *
+     * @param factor the number every input is multiplied by
+     * @param modulus the positive modulus
+     */
+    public BigIntegerMultiplier(BigInteger factor, BigInteger modulus) {
+        this.factor = factor.mod(modulus);
+        this.modulus = modulus;
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger c) {
+        return factor.multiply(c).mod(modulus);
+    }
+
+    @Override
+    public void multiply(BigInteger c, int[] result, int[] scratch) {
+        Limbs.toLimbs(multiply(c), result);
+    }
+
+    @Override
+    public int[] newScratch() {
+        //BigInteger allocates its own intermediates
+        return new int[0];
+    }
+}
@@ -0,0 +1,372 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class is the compact binary form of Merkel hellman knapsack
+ * ciphertext, written straight into and read straight from a ByteBuffer.
+ * A message is a header naming the key and the number of blocks, followed
+ * by length prefixed blocks. Lengths are unsigned LEB128 varints, one byte
+ * for values below 128, and numbers are unsigned big endian magnitudes with
+ * no sign byte, so a block is about half the size of its decimal string:
+ *
+ * <pre>
+ * int     magic, "MHKC"
+ * short   format version, 1
+ * short   flags, 0
+ * long    key id, see {@link MerkleHellmanKnapsackCryptoProject#getKeyId()}
+ * int     block count
+ * then for every block:
+ * varint  number of plaintext bytes in the block (0 to block size)
+ * varint  number of magnitude bytes
+ * byte[]  the encrypted number
+ * </pre>
+ *
+ * Fixed width numbers are big endian, the default order of a ByteBuffer.
+ *
+ * @author Anshu Anand
+ */
+public final class CiphertextFormat {
+
+    //"MHKC" in ASCII
+    public final static int MAGIC = 0x4D484B43;
+    //version of the layout written by this class
+    public final static short VERSION = 1;
+    //bytes before the first block
+    public final static int HEADER_SIZE = 20;
+    //bytes of the largest varint of an int
+    private final static int MAX_VARINT_SIZE = 5;
+
+    private CiphertextFormat() {
+    }
+
+    /**
+     * This method returns the largest number of bytes a message of the
+     * given plaintext length can take.
+     *
+     * @param crypto the key
+     * @param length the number of plaintext bytes
+     * @return the bound in bytes
+     */
+    public static long getMaxEncodedLength(MerkleHellmanKnapsackCryptoProject crypto, long length) {
+        int blockSize = crypto.getBlockSize();
+        long blocks = (length + blockSize - 1) / blockSize;
+        return HEADER_SIZE + blocks * (2 * MAX_VARINT_SIZE + crypto.getMaxCipherLength());
+    }
+
+    /**
+     * This method encrypts bytes into a whole message, one block per block
+     * size bytes.
+     *
+     * @param crypto the key
+     * @param data the plaintext
+     * @param offset the position of the first plaintext byte
+     * @param length the number of plaintext bytes
+     * @param out receives the message at its position, which must have
+     * {@link #getMaxEncodedLength} bytes remaining
+     * @return the number of blocks written
+     */
+    public static int encrypt(MerkleHellmanKnapsackCryptoProject crypto, byte[] data, int offset, int length, ByteBuffer out) {
+        return encrypt(crypto, null, data, offset, length, out);
+    }
+
+    /**
+     * This method encrypts bytes into a whole message, taking blocks seen
+     * before from a cache.
+     *
+     * @param crypto the key
+     * @param cache the cache of encrypted blocks, null for none
+     * @param data the plaintext
+     * @param offset the position of the first plaintext byte
+     * @param length the number of plaintext bytes
+     * @param out receives the message at its position, which must have
+     * {@link #getMaxEncodedLength} bytes remaining
+     * @return the number of blocks written
+     */
+    public static int encrypt(MerkleHellmanKnapsackCryptoProject crypto, EncryptionCache cache, byte[] data, int offset, int length, ByteBuffer out) {
+        int blockSize = crypto.getBlockSize();
+        int blocks = (length + blockSize - 1) / blockSize;
+        writeHeader(out, crypto.getKeyId(), blocks);
+        for (int i = 0; i < blocks; i++) {
+            int start = i * blockSize;
+            int blockLength = Math.min(blockSize, length - start);
+            writeBlock(out, blockLength, cache == null ? crypto.encryptBlock(data, offset + start, blockLength)
+                    : cache.encryptBlock(crypto, data, offset + start, blockLength));
+        }
+        return blocks;
+    }
+
+    /**
+     * This method encrypts the remaining bytes of a buffer into a whole
+     * message, reading them where they lie, so a direct buffer is never
+     * copied onto the heap. The position of in is moved to its limit.
+     *
+     * @param crypto the key
+     * @param in the plaintext between position and limit, heap or direct
+     * @param out receives the message at its position, which must have
+     * {@link #getMaxEncodedLength} bytes remaining
+     * @return the number of blocks written
+     */
+    public static int encrypt(MerkleHellmanKnapsackCryptoProject crypto, ByteBuffer in, ByteBuffer out) {
+        return encrypt(crypto, null, in, out);
+    }
+
+    /**
+     * This method encrypts the remaining bytes of a buffer into a whole
+     * message, taking blocks seen before from a cache. The position of in
+     * is moved to its limit.
+     *
+     * @param crypto the key
+     * @param cache the cache of encrypted blocks, null for none
+     * @param in the plaintext between position and limit, heap or direct
+     * @param out receives the message at its position, which must have
+     * {@link #getMaxEncodedLength} bytes remaining
+     * @return the number of blocks written
+     */
+    public static int encrypt(MerkleHellmanKnapsackCryptoProject crypto, EncryptionCache cache, ByteBuffer in, ByteBuffer out) {
+        int blockSize = crypto.getBlockSize();
+        int length = in.remaining();
+        int blocks = (length + blockSize - 1) / blockSize;
+        writeHeader(out, crypto.getKeyId(), blocks);
+        for (int i = 0; i < blocks; i++) {
+            int start = i * blockSize;
+            int blockLength = Math.min(blockSize, length - start);
+            int index = in.position() + start;
+            writeBlock(out, blockLength, cache == null ? crypto.encryptBlock(in, index, blockLength)
+                    : cache.encryptBlock(crypto, in, index, blockLength));
+        }
+        in.position(in.limit());
+        return blocks;
+    }
+
+    /**
+     * This method decrypts a whole message written by
+     * {@link #encrypt(MerkleHellmanKnapsackCryptoProject, byte[], int, int, ByteBuffer)}.
+     *
+     * @param crypto the key the message was encrypted with
+     * @param in the message at its position, which is moved past it
+     * @return the plaintext
+     * @exception IllegalArgumentException Indicates that the message is
+     * corrupt, truncated or encrypted with another key
+     */
+    public static byte[] decrypt(MerkleHellmanKnapsackCryptoProject crypto, ByteBuffer in) {
+        //the block lengths are summed first, so the plaintext is allocated once
+        byte[] plain = new byte[peekPlainLength(in, crypto.getBlockSize(), crypto.getMaxCipherLength())];
+        decrypt(crypto, in, ByteBuffer.wrap(plain));
+        return plain;
+    }
+
+    /**
+     * This method decrypts a whole message into a buffer, heap or direct.
+     *
+     * @param crypto the key the message was encrypted with
+     * @param in the message at its position, which is moved past it
+     * @param out receives the plaintext at its position, with room for the
+     * block count times the block size
+     * @return the number of plaintext bytes put
+     * @exception IllegalArgumentException Indicates that the message is
+     * corrupt, truncated or encrypted with another key
+     */
+    public static int decrypt(MerkleHellmanKnapsackCryptoProject crypto, ByteBuffer in, ByteBuffer out) {
+        int blocks = readHeader(in, crypto.getKeyId());
+        int blockSize = crypto.getBlockSize();
+        if (blocks > in.remaining() / 2) {
+            throw new IllegalArgumentException("The block count [" + blocks + "] is greater than the message can hold.");
+        }
+        DecryptionContext context = crypto.getDecryptionContext();
+        DecryptionContext.Scratch scratch = context.newScratch();
+        int position = 0;
+        int[] length = new int[1];
+        for (int i = 0; i < blocks; i++) {
+            BigInteger cipher = readBlock(in, blockSize, crypto.getMaxCipherLength(), length);
+            position += context.decrypt(cipher, length[0], out, scratch);
+        }
+        return position;
+    }
+
+    /**
+     * This method returns the number of plaintext bytes of the message at
+     * the buffer's position without moving it: the sum of the plaintext
+     * lengths of its blocks.
+     *
+     * @param in the buffer holding the message
+     * @param blockSize the largest plaintext length of a block
+     * @param maxCipherLength the largest magnitude length of a block
+     * @return the plaintext length
+     * @exception IllegalArgumentException Indicates that the message is
+     * corrupt or truncated, or its plaintext does not fit an array
+     */
+    private static int peekPlainLength(ByteBuffer in, int blockSize, int maxCipherLength) {
+        readKeyId(in);
+        ByteBuffer view = in.duplicate();
+        view.position(in.position() + HEADER_SIZE - 4);
+        int blocks = view.getInt();
+        if (blocks < 0 || blocks > view.remaining() / 2) {
+            throw new IllegalArgumentException("The block count [" + blocks + "] is greater than the message can hold.");
+        }
+        long length = 0;
+        for (int i = 0; i < blocks; i++) {
+            int plain = getVarint(view);
+            int size = getVarint(view);
+            checkBlock(view, plain, size, blockSize, maxCipherLength);
+            view.position(view.position() + size);
+            length += plain;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The plaintext length [" + length + "] is greater than an array can hold.");
+        }
+        return (int) length;
+    }
+
+    /**
+     * This method writes the message header.
+     *
+     * @param out the buffer to write
+     * @param keyId the id of the encrypting key
+     * @param blockCount the number of blocks that follow
+     */
+    public static void writeHeader(ByteBuffer out, long keyId, int blockCount) {
+        out.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        out.putLong(keyId).putInt(blockCount);
+    }
+
+    /**
+     * This method reads and checks the message header.
+     *
+     * @param in the buffer to read
+     * @param keyId the id of the key expected to decrypt the message
+     * @return the number of blocks that follow
+     * @exception IllegalArgumentException Indicates that the header is
+     * corrupt, truncated or names another key
+     */
+    public static int readHeader(ByteBuffer in, long keyId) {
+        long found = readKeyId(in);
+        if (found != keyId) {
+            throw new IllegalArgumentException("The message key id [" + Long.toHexString(found) + "] is not the key id [" + Long.toHexString(keyId) + "].");
+        }
+        in.position(in.position() + HEADER_SIZE - 4);
+        int blocks = in.getInt();
+        if (blocks < 0) {
+            throw new IllegalArgumentException("The block count [" + blocks + "] is negative.");
+        }
+        return blocks;
+    }
+
+    /**
+     * This method returns the key id of the message at the buffer's
+     * position without moving it, so the right key can be picked before
+     * decrypting.
+     *
+     * @param in the buffer holding the message
+     * @return the key id
+     * @exception IllegalArgumentException Indicates that there is no message
+     * header at the position
+     */
+    public static long readKeyId(ByteBuffer in) {
+        int start = in.position();
+        if (in.remaining() < HEADER_SIZE || in.getInt(start) != MAGIC) {
+            throw new IllegalArgumentException("The buffer does not hold a ciphertext message.");
+        }
+        short version = in.getShort(start + 4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("The ciphertext version [" + version + "] is not supported.");
+        }
+        return in.getLong(start + 8);
+    }
+
+    /**
+     * This method writes one block.
+     *
+     * @param out the buffer to write
+     * @param length the number of plaintext bytes in the block
+     * @param encrypted the encrypted block
+     */
+    public static void writeBlock(ByteBuffer out, int length, BigInteger encrypted) {
+        byte[] bytes = encrypted.toByteArray();
+        //toByteArray may start with a zero sign byte, which is not written
+        int start = bytes[0] == 0 ? 1 : 0;
+        putVarint(out, length);
+        putVarint(out, bytes.length - start);
+        out.put(bytes, start, bytes.length - start);
+    }
+
+    /**
+     * This method reads one block.
+     *
+     * @param in the buffer to read
+     * @param blockSize the largest plaintext length allowed
+     * @param maxCipherLength the largest magnitude length allowed
+     * @param length receives the number of plaintext bytes at index 0
+     * @return the encrypted block
+     * @exception IllegalArgumentException Indicates that the block is
+     * corrupt or truncated
+     */
+    public static BigInteger readBlock(ByteBuffer in, int blockSize, int maxCipherLength, int[] length) {
+        int plain = getVarint(in);
+        int size = getVarint(in);
+        checkBlock(in, plain, size, blockSize, maxCipherLength);
+        byte[] magnitude = new byte[size];
+        in.get(magnitude);
+        length[0] = plain;
+        return new BigInteger(1, magnitude);
+    }
+
+    /**
+     * This method checks the lengths of a block whose magnitude starts at
+     * the buffer's position.
+     *
+     * @param in the buffer holding the block
+     * @param plain the number of plaintext bytes in the block
+     * @param size the number of magnitude bytes
+     * @param blockSize the largest plaintext length allowed
+     * @param maxCipherLength the largest magnitude length allowed
+     * @exception IllegalArgumentException Indicates that the block is
+     * corrupt or truncated
+     */
+    private static void checkBlock(ByteBuffer in, int plain, int size, int blockSize, int maxCipherLength) {
+        if (plain < 0 || plain > blockSize || size < 0 || size > maxCipherLength || size > in.remaining()) {
+            throw new IllegalArgumentException("The ciphertext block is corrupt.");
+        }
+    }
+
+    /**
+     * This method writes an unsigned LEB128 varint, seven bits per byte, low
+     * bits first.
+     *
+     * @param out the buffer to write
+     * @param value a non negative value
+     */
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * This method reads an unsigned LEB128 varint.
+     *
+     * @param in the buffer to read
+     * @return the value, negative when it does not fit an int
+     * @exception IllegalArgumentException Indicates that the buffer ends in
+     * the varint
+     */
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        try {
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("The ciphertext is truncated.", e);
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is the Java Flight Recorder event of one decryption call, one
+ * block through decryptData or a whole input through the stream and
+ * parallel ciphers. It is committed only while a recording enables it,
+ * and it is reached only through {@link KnapsackEvents}, so the project
+ * still loads on a JDK without jdk.jfr.
+ *
+ * @author Anshu Anand
+ */
+@Name("merkle.hellman.knapsack.Decrypt")
+@Label("Knapsack Decrypt")
+@Category("Merkle Hellman Knapsack")
+@Description("One decryption call on a knapsack key")
+final class DecryptEvent extends Event {
+
+    @Label("Block Count")
+    long blockCount;
+
+    @Label("Key Size")
+    @Description("Number of elements in the knapsack")
+    int keySize;
+
+    @Label("Plaintext Bytes")
+    @DataAmount
+    long bytes;
+
+    /**
+     * This method creates an event and starts its timing.
+     *
+     * @return the started event
+     */
+    static Object start() {
+        DecryptEvent event = new DecryptEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * This method ends an event returned by {@link #start()}.
+     *
+     * @param event the started event
+     * @param blockCount the number of blocks decrypted
+     * @param keySize the knapsack length
+     * @param bytes the number of plaintext bytes
+     */
+    static void end(Object event, long blockCount, int keySize, long bytes) {
+        ((DecryptEvent) event).end(blockCount, keySize, bytes);
+    }
+
+    /**
+     * This method fills in and commits the event, if a recording wants it.
+     *
+     * @param blockCount the number of blocks decrypted
+     * @param keySize the knapsack length
+     * @param bytes the number of plaintext bytes
+     */
+    void end(long blockCount, int keySize, long bytes) {
+        if (shouldCommit()) {
+            this.blockCount = blockCount;
+            this.keySize = keySize;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
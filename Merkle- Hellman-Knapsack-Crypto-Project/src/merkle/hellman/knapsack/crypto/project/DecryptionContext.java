@@ -0,0 +1,139 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds the private key in the form decryption needs: a
+ * {@link ModularMultiplier} by r inverse mod q and a
+ * {@link SuperincreasingDecoder} over the fixed width limbs of w, both built
+ * once. Each ciphertext then costs one modular multiplication plus the
+ * greedy subset sum pass over w. A context is never modified after it is
+ * built, so it can be shared between threads; each thread brings its own
+ * {@link Scratch}.
+ *
+ * @author Anshu Anand
+ */
+public class DecryptionContext {
+
+    //multiplies by r inverse mod q
+    private final ModularMultiplier rInverse;
+    //greedy subset sum over w
+    private final SuperincreasingDecoder decoder;
+
+    /**
+     * This is the constructor for the context of a private key.
+     *
+     * @param w the superincreasing sequence, stored with the stride
+     * {@link Limbs#count(BigInteger)} of q
+     * @param q the modulus, greater than the sum of w
+     * @param r the multiplier, coprime to q
+     * @param arithmetic the backend multiplying by r inverse mod q
+     */
+    DecryptionContext(KnapsackElements w, BigInteger q, BigInteger r, ArithmeticBackend arithmetic) {
+        this.rInverse = arithmetic.create(r.modInverse(q), q);
+        this.decoder = new SuperincreasingDecoder(w);
+    }
+
+    /**
+     * This method returns the number of plaintext bytes in a block.
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return decoder.getBlockSize();
+    }
+
+    /**
+     * This method creates the working buffers of one decrypting thread.
+     *
+     * @return a new scratch
+     */
+    public Scratch newScratch() {
+        return new Scratch(new int[decoder.getLimbCount()], rInverse.newScratch());
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: decrypts the encrypted number into block size bytes,
+     * including any trailing zero bytes.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param block the array receiving the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written, which is the block size
+     */
+    public int decryptBlock(BigInteger big, byte[] block, int offset) {
+        return decryptBlock(big, block, offset, newScratch());
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: decrypts the encrypted number into block size bytes,
+     * including any trailing zero bytes, working in the given scratch.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param block the array receiving the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @param scratch buffers from {@link #newScratch()}, not shared between
+     * threads
+     * @return the number of bytes written, which is the block size
+     * @comment one modular multiplication and at most N comparisons, so this
+     * routine is Big Theeta(N)
+     */
+    public int decryptBlock(BigInteger big, byte[] block, int offset, Scratch scratch) {
+        long start = System.nanoTime();
+        rInverse.multiply(big, scratch.remainder, scratch.multiply);
+        int written = decoder.decode(scratch.remainder, block, offset);
+        KnapsackMetrics.getInstance().recordDecrypt(System.nanoTime() - start, written);
+        return written;
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: decrypts
+     * the encrypted number and puts the first length bytes of the block into
+     * out. A heap buffer with room for a whole block is decoded into in
+     * place, which may write zero bytes past the ones put; any other buffer
+     * receives the bytes from a block kept in the scratch.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param length the number of plaintext bytes the block holds
+     * @param out receives the bytes at its position, heap or direct
+     * @param scratch buffers from {@link #newScratch()}, not shared between
+     * threads
+     * @return the number of bytes put
+     */
+    public int decrypt(BigInteger big, int length, ByteBuffer out, Scratch scratch) {
+        if (out.hasArray() && out.remaining() >= getBlockSize()) {
+            int position = out.position();
+            decryptBlock(big, out.array(), out.arrayOffset() + position, scratch);
+            out.position(position + length);
+        } else {
+            if (scratch.block == null) {
+                scratch.block = new byte[getBlockSize()];
+            }
+            decryptBlock(big, scratch.block, 0, scratch);
+            out.put(scratch.block, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * This class holds the buffers one decryption works in, so a thread
+     * decrypting many blocks allocates them once.
+     */
+    public static final class Scratch {
+
+        //r inverse * c mod q, used up by the decoder
+        private final int[] remainder;
+        //working space of the multiplier
+        private final int[] multiply;
+        //one plaintext block for destinations not decoded into, made on first use
+        private byte[] block;
+
+        private Scratch(int[] remainder, int[] multiply) {
+            this.remainder = remainder;
+            this.multiply = multiply;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class remembers the encrypted numbers of recent blocks. Encryption
+ * with a public key b is deterministic, so a block seen before is answered
+ * from the cache instead of summing b again, which pays off when the same
+ * short identifiers are encrypted over and over.
+ *
+ * Entries are keyed by the block bytes and the key id. The cache is split
+ * into segments, each a least recently used map under its own lock, so
+ * threads working on different blocks rarely meet and there is no global
+ * lock. When a block of another key arrives every entry of the old key is
+ * dropped, so a key change invalidates the cache without being told.
+ *
+ * @author Anshu Anand
+ */
+public class EncryptionCache {
+
+    //number of segments, a power of two
+    private final static int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    //id of the key the entries belong to
+    private final AtomicLong keyId = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * This is the constructor for a cache of at most about the given number
+     * of blocks.
+     *
+     * @param capacity the number of blocks kept, spread over the segments
+     */
+    public EncryptionCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity [" + capacity + "] is not positive.");
+        }
+        int perSegment = (capacity + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * This method encrypts the UTF-8 bytes of the user's input string as one
+     * block, through the cache.
+     *
+     * @param crypto the key
+     * @param s the user's input string
+     * @return the encrypted number
+     * @exception IllegalArgumentException Indicates that the UTF-8 bytes of s
+     * are more than the block size
+     */
+    public BigInteger encryptData(MerkleHellmanKnapsackCryptoProject crypto, CharSequence s) {
+        byte[] block = new byte[crypto.getBlockSize()];
+        int length = crypto.toBytes(s, block, 0);
+        return encryptBlock(crypto, block, 0, length);
+    }
+
+    /**
+     * This method encrypts bytes as one block, through the cache. The result
+     * is the one {@link MerkleHellmanKnapsackCryptoProject#encryptBlock}
+     * returns.
+     *
+     * @param crypto the key
+     * @param block the array holding the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @param length the number of bytes to encrypt
+     * @return the encrypted number
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public BigInteger encryptBlock(MerkleHellmanKnapsackCryptoProject crypto, byte[] block, int offset, int length) {
+        return encrypt(crypto, Arrays.copyOfRange(block, offset, offset + length));
+    }
+
+    /**
+     * This method encrypts bytes of a buffer as one block, through the
+     * cache, reading them by absolute index, so neither the position nor
+     * the limit moves.
+     *
+     * @param crypto the key
+     * @param buffer the buffer holding the plaintext bytes, heap or direct
+     * @param index the index of the first byte in buffer
+     * @param length the number of bytes to encrypt
+     * @return the encrypted number
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public BigInteger encryptBlock(MerkleHellmanKnapsackCryptoProject crypto, ByteBuffer buffer, int index, int length) {
+        if (buffer.hasArray()) {
+            return encryptBlock(crypto, buffer.array(), buffer.arrayOffset() + index, length);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+        return encrypt(crypto, bytes);
+    }
+
+    /**
+     * This method encrypts a block through the cache.
+     *
+     * @param crypto the key
+     * @param bytes a copy of the block, kept as the cache entry
+     * @return the encrypted number
+     */
+    private BigInteger encrypt(MerkleHellmanKnapsackCryptoProject crypto, byte[] bytes) {
+        long id = crypto.getKeyId();
+        long known = keyId.get();
+        if (id != known && keyId.compareAndSet(known, id)) {
+            invalidate();
+        }
+        BlockKey entry = new BlockKey(id, bytes);
+        Segment segment = segments[(entry.hash ^ (entry.hash >>> 16)) & (SEGMENTS - 1)];
+        BigInteger encrypted;
+        synchronized (segment) {
+            encrypted = segment.get(entry);
+        }
+        if (encrypted != null) {
+            hits.increment();
+            return encrypted;
+        }
+        misses.increment();
+        //the sum is computed outside the lock, two threads may both compute it
+        encrypted = crypto.encryptBlock(bytes, 0, bytes.length);
+        if (id == keyId.get()) {
+            synchronized (segment) {
+                segment.put(entry, encrypted);
+            }
+        }
+        return encrypted;
+    }
+
+    /**
+     * This method drops every entry.
+     */
+    public void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of blocks held.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * This method returns the number of blocks answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * This method returns the number of blocks encrypted because they were
+     * not in the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * This method returns the number of blocks dropped to stay in capacity.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * This class is one segment, blocks in access order, guarded by itself.
+     */
+    private final class Segment extends LinkedHashMap<BlockKey, BigInteger> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlockKey, BigInteger> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This class is the key of a cached block.
+     */
+    private static final class BlockKey {
+
+        private final long keyId;
+        private final byte[] bytes;
+        private final int hash;
+
+        BlockKey(long keyId, byte[] bytes) {
+            this.keyId = keyId;
+            this.bytes = bytes;
+            this.hash = 31 * Long.hashCode(keyId) + Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey entry = (BlockKey) other;
+            return keyId == entry.keyId && Arrays.equals(bytes, entry.bytes);
+        }
+    }
+}
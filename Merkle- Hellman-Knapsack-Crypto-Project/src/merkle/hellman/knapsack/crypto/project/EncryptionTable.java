@@ -0,0 +1,101 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This class holds precomputed sums of the public key b. Each plaintext byte
+ * selects up to 8 consecutive elements of b, so for every 8 element window
+ * the sum of each of the 256 possible selections is computed once. A block is
+ * then encrypted with at most one addition per byte instead of one per bit.
+ *
+ * @author Anshu Anand
+ */
+public class EncryptionTable {
+
+    //bytes taken by an object header on a 64 bit VM with compressed pointers
+    private final static int OBJECT_HEADER = 16;
+    //sums[window][value] is the sum of the elements of b selected by value
+    private final BigInteger[][] sums;
+    //estimated heap taken by sums
+    private final long footprint;
+
+    /**
+     * This is the constructor for the table of the given public key.
+     *
+     * @precondition the length of b is a multiple of 8
+     * @param b the public key elements
+     * @comment every window needs 255 additions, so this routine is Big
+     * Theeta(N)
+     */
+    EncryptionTable(BigInteger[] b) {
+        int windows = b.length / 8;
+        sums = new BigInteger[windows][256];
+        long bytes = arrayBytes(windows);
+        for (int window = 0; window < windows; window++) {
+            BigInteger[] table = sums[window];
+            table[0] = BigInteger.ZERO;
+            for (int value = 1; value < 256; value++) {
+                //the lowest set bit of value is the last element it selects
+                int element = window * 8 + 7 - Integer.numberOfTrailingZeros(value);
+                table[value] = table[value & (value - 1)].add(b[element]);
+                bytes += bigIntegerBytes(table[value]);
+            }
+            bytes += arrayBytes(256);
+        }
+        footprint = bytes;
+    }
+
+    /**
+     * This method returns the sum of the elements of b selected by one byte.
+     *
+     * @param window the position of the byte in the block
+     * @param value the byte
+     * @return the sum of the selected elements
+     */
+    public BigInteger sum(int window, byte value) {
+        return sums[window][value & 0xff];
+    }
+
+    /**
+     * This method returns the estimated number of heap bytes the table
+     * takes, counting the arrays and every BigInteger with its magnitude.
+     *
+     * @return the estimated footprint in bytes
+     */
+    public long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * This method estimates the heap taken by a reference array.
+     *
+     * @param length the length of the array
+     * @return the estimated size in bytes
+     */
+    private static long arrayBytes(int length) {
+        return align(OBJECT_HEADER + 4L * length);
+    }
+
+    /**
+     * This method estimates the heap taken by a BigInteger and its int[]
+     * magnitude.
+     *
+     * @param value the BigInteger
+     * @return the estimated size in bytes
+     */
+    static long bigIntegerBytes(BigInteger value) {
+        long magnitude = align(OBJECT_HEADER + 4L * ((value.bitLength() + 31) / 32));
+        //header, signum, the cached bit count and length fields and mag
+        return align(OBJECT_HEADER + 4 * 6) + magnitude;
+    }
+
+    /**
+     * This method rounds a size up to the 8 byte object alignment.
+     *
+     * @param bytes the unaligned size
+     * @return the aligned size
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
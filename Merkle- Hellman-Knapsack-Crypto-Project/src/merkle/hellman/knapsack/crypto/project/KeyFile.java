@@ -0,0 +1,301 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * This class saves a Merkel hellman knapsack key pair to a compact binary
+ * file and loads it back through a memory mapped FileChannel, so a process
+ * can reuse a key across restarts instead of generating one. All numbers are
+ * big endian, and every key element is an unsigned magnitude of the same
+ * fixed width, the byte length of q:
+ *
+ * <pre>
+ * int    magic, "MHKK"
+ * short  format version, 1
+ * short  flags: 1 = private part present, 2 = precomputed encryption
+ * int    knapsack length N
+ * int    random bound
+ * int    arithmetic backend ordinal
+ * int    element width in bytes
+ * N      elements of b                  (public part ends here)
+ * 1      element q
+ * 1      element r
+ * N      elements of w
+ * </pre>
+ *
+ * The public part comes first, so an encrypt only process maps just that
+ * prefix of the file.
+ *
+ * @author Anshu Anand
+ */
+public final class KeyFile {
+
+    //"MHKK" in ASCII
+    public final static int MAGIC = 0x4D484B4B;
+    //version of the layout written by this class
+    public final static short VERSION = 1;
+    //bytes before the first element
+    public final static int HEADER_SIZE = 24;
+
+    private final static short FLAG_PRIVATE = 1;
+    private final static short FLAG_PRECOMPUTED = 2;
+
+    private KeyFile() {
+    }
+
+    /**
+     * This method writes the whole key pair to a file, replacing any file
+     * already there in one atomic rename. On POSIX systems the file is
+     * readable and writable by its owner only.
+     *
+     * @param crypto the key to save, which must hold the private part
+     * @param path the file to write
+     * @throws IOException if writing fails
+     * @exception IllegalArgumentException Indicates that the key has no
+     * private part
+     */
+    public static void save(MerkleHellmanKnapsackCryptoProject crypto, Path path) throws IOException {
+        if (!crypto.hasPrivateKey()) {
+            throw new IllegalArgumentException("The key holds no private part to save.");
+        }
+        write(crypto, path, true);
+    }
+
+    /**
+     * This method writes only the public part of a key, for processes that
+     * must never see the private key.
+     *
+     * @param crypto the key to save
+     * @param path the file to write
+     * @throws IOException if writing fails
+     */
+    public static void savePublic(MerkleHellmanKnapsackCryptoProject crypto, Path path) throws IOException {
+        write(crypto, path, false);
+    }
+
+    /**
+     * This method loads the whole key pair from a file written by
+     * {@link #save(MerkleHellmanKnapsackCryptoProject, Path)}.
+     *
+     * @param path the file to read
+     * @return the key, able to encrypt and decrypt
+     * @throws IOException if reading fails, the file is not a key file, or it
+     * holds no private part
+     */
+    public static MerkleHellmanKnapsackCryptoProject load(Path path) throws IOException {
+        return read(path, true);
+    }
+
+    /**
+     * This method loads only the public part of a key file, mapping just the
+     * header and b.
+     *
+     * @param path the file to read
+     * @return the key, able to encrypt only
+     * @throws IOException if reading fails or the file is not a key file
+     */
+    public static MerkleHellmanKnapsackCryptoProject loadPublic(Path path) throws IOException {
+        return read(path, false);
+    }
+
+    /**
+     * This method loads only the public key of a key file, mapping just the
+     * header and b, for processes that never decrypt.
+     *
+     * @param path the file to read
+     * @return the public key
+     * @throws IOException if reading fails or the file is not a key file
+     */
+    public static KnapsackPublicKey loadPublicKey(Path path) throws IOException {
+        return read(path, false).getPublicKey();
+    }
+
+    /**
+     * This method writes the header and the requested parts of a key.
+     *
+     * @param crypto the key to save
+     * @param path the file to write
+     * @param withPrivate true to write q, r and w after b
+     * @throws IOException if writing fails
+     */
+    private static void write(MerkleHellmanKnapsackCryptoProject crypto, Path path, boolean withPrivate) throws IOException {
+        KnapsackParameters parameters = crypto.getParameters();
+        BigInteger[] b = crypto.getB();
+        //q is above every element, so its width covers the private part too
+        int bits = withPrivate ? crypto.getQ().bitLength() : crypto.getMaxElementBits();
+        int width = (bits + 7) / 8;
+        int n = b.length;
+        long size = HEADER_SIZE + (long) width * (withPrivate ? 2 * n + 2 : n);
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        short flags = 0;
+        if (withPrivate) {
+            flags |= FLAG_PRIVATE;
+        }
+        if (parameters.isPrecomputedEncryption()) {
+            flags |= FLAG_PRECOMPUTED;
+        }
+        buffer.putInt(MAGIC).putShort(VERSION).putShort(flags);
+        buffer.putInt(n).putInt(parameters.getRandomBound()).putInt(parameters.getArithmetic().ordinal());
+        buffer.putInt(width);
+        for (BigInteger element : b) {
+            putElement(buffer, element, width);
+        }
+        if (withPrivate) {
+            putElement(buffer, crypto.getQ(), width);
+            putElement(buffer, crypto.getR(), width);
+            for (BigInteger element : crypto.getW()) {
+                putElement(buffer, element, width);
+            }
+        }
+        buffer.flip();
+        //a crash while writing leaves the old file whole, the new one replaces it in one rename
+        Path target = path.toAbsolutePath();
+        Path temp = createTempFile(target, withPrivate);
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                KnapsackStreamCipher.writeFully(channel, buffer);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * This method creates an empty file beside the target, on the same file
+     * system so it can be renamed over the target. On POSIX systems a file
+     * holding the private part is readable and writable by its owner only.
+     *
+     * @param target the file the key is saved to
+     * @param withPrivate true when the file will hold the private part
+     * @return the new file
+     * @throws IOException if the file cannot be created
+     */
+    private static Path createTempFile(Path target, boolean withPrivate) throws IOException {
+        Path directory = target.getParent();
+        String prefix = target.getFileName() + ".";
+        if (Files.getFileStore(directory).supportsFileAttributeView("posix")) {
+            String permissions = withPrivate ? "rw-------" : "rw-r--r--";
+            return Files.createTempFile(directory, prefix, ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions)));
+        }
+        return Files.createTempFile(directory, prefix, ".tmp");
+    }
+
+    /**
+     * This method maps the file and reads the requested parts of a key.
+     *
+     * @param path the file to read
+     * @param withPrivate true to read q, r and w as well
+     * @return the key
+     * @throws IOException if reading fails or the file is not a key file
+     */
+    private static MerkleHellmanKnapsackCryptoProject read(Path path, boolean withPrivate) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("The file [" + path + "] is too short to be a key file.");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("The file [" + path + "] is not a key file.");
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("The key file version [" + version + "] is not supported.");
+            }
+            short flags = header.getShort();
+            int n = header.getInt();
+            int randomBound = header.getInt();
+            int arithmetic = header.getInt();
+            int width = header.getInt();
+            if (withPrivate && (flags & FLAG_PRIVATE) == 0) {
+                throw new IOException("The key file [" + path + "] holds no private part.");
+            }
+            if (n <= 0 || n % 8 != 0 || width <= 0 || arithmetic < 0 || arithmetic >= ArithmeticBackend.values().length) {
+                throw new IOException("The key file [" + path + "] has a corrupt header.");
+            }
+            long partSize = (long) width * (withPrivate ? 2 * n + 2 : n);
+            if (HEADER_SIZE + partSize > fileSize) {
+                throw new IOException("The key file [" + path + "] is truncated.");
+            }
+            KnapsackParameters parameters = new KnapsackParameters.Builder()
+                    .knapsackLength(n)
+                    .randomBound(randomBound)
+                    .precomputedEncryption((flags & FLAG_PRECOMPUTED) != 0)
+                    .arithmetic(ArithmeticBackend.values()[arithmetic])
+                    .build();
+
+            MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, partSize);
+            byte[] scratch = new byte[width];
+            BigInteger[] b = getElements(body, n, scratch);
+            if (!withPrivate) {
+                return new MerkleHellmanKnapsackCryptoProject(new KnapsackPublicKey(parameters, b));
+            }
+            BigInteger q = getElement(body, scratch);
+            BigInteger r = getElement(body, scratch);
+            BigInteger[] w = getElements(body, n, scratch);
+            return new MerkleHellmanKnapsackCryptoProject(parameters, w, q, r, b);
+        }
+    }
+
+    /**
+     * This method writes a non negative number as an unsigned magnitude of
+     * the given width, padded with leading zeros.
+     *
+     * @param buffer the buffer to write
+     * @param value the number
+     * @param width the number of bytes to write
+     */
+    private static void putElement(ByteBuffer buffer, BigInteger value, int width) {
+        byte[] bytes = value.toByteArray();
+        //toByteArray may start with a zero sign byte
+        int start = bytes.length > width ? bytes.length - width : 0;
+        for (int i = bytes.length - start; i < width; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.put(bytes, start, bytes.length - start);
+    }
+
+    /**
+     * This method reads one element.
+     *
+     * @param buffer the buffer to read
+     * @param scratch an array of the element width
+     * @return the element
+     */
+    private static BigInteger getElement(ByteBuffer buffer, byte[] scratch) {
+        buffer.get(scratch);
+        return new BigInteger(1, scratch);
+    }
+
+    /**
+     * This method reads consecutive elements.
+     *
+     * @param buffer the buffer to read
+     * @param n the number of elements
+     * @param scratch an array of the element width
+     * @return the elements
+     */
+    private static BigInteger[] getElements(ByteBuffer buffer, int n, byte[] scratch) {
+        BigInteger[] elements = new BigInteger[n];
+        for (int i = 0; i < n; i++) {
+            elements[i] = getElement(buffer, scratch);
+        }
+        return elements;
+    }
+}
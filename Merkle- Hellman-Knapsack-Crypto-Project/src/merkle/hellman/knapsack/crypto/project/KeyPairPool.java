@@ -0,0 +1,245 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps Merkel hellman knapsack key pairs generated ahead of time.
+ * A background executor generates keys until the pool holds the watermark,
+ * and every key taken out starts another, so the prime searches of key
+ * generation do not land on the caller. Taking a ready key is a queue poll.
+ * When the pool is empty the caller generates a key itself, which is counted
+ * as a miss.
+ *
+ * @author Anshu Anand
+ */
+public class KeyPairPool {
+
+    private final KnapsackParameters parameters;
+    //number of ready keys the pool refills to
+    private final int watermark;
+    private final ExecutorService executor;
+    //true when the executor was created by the pool
+    private final boolean ownsExecutor;
+    private final ConcurrentLinkedQueue<MerkleHellmanKnapsackCryptoProject> ready = new ConcurrentLinkedQueue<>();
+    //ready keys, kept beside the queue whose size() is not constant time
+    private final AtomicInteger depth = new AtomicInteger();
+    //generations submitted and not finished
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * This is the constructor for a pool refilled by one background daemon
+     * thread.
+     *
+     * @param parameters the sizes of the generated keys
+     * @param watermark the number of ready keys to keep
+     */
+    public KeyPairPool(KnapsackParameters parameters, int watermark) {
+        this(parameters, watermark, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "knapsack-keygen");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * This is the constructor for a pool refilled on the given executor.
+     *
+     * @param parameters the sizes of the generated keys
+     * @param watermark the number of ready keys to keep
+     * @param executor runs the key generations, it is not shut down by the
+     * pool
+     */
+    public KeyPairPool(KnapsackParameters parameters, int watermark, ExecutorService executor) {
+        this(parameters, watermark, executor, false);
+    }
+
+    private KeyPairPool(KnapsackParameters parameters, int watermark, ExecutorService executor, boolean ownsExecutor) {
+        if (watermark <= 0) {
+            throw new IllegalArgumentException("The watermark [" + watermark + "] is not positive.");
+        }
+        this.parameters = parameters;
+        this.watermark = watermark;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        refill();
+    }
+
+    /**
+     * This method returns a ready key, or generates one on the calling thread
+     * when the pool is empty. Either way another key is scheduled.
+     *
+     * @return a key pair no other caller receives
+     */
+    public MerkleHellmanKnapsackCryptoProject take() {
+        MerkleHellmanKnapsackCryptoProject key = poll();
+        if (key == null) {
+            misses.incrementAndGet();
+            key = generate();
+            taken.incrementAndGet();
+        }
+        return key;
+    }
+
+    /**
+     * This method returns a ready key without waiting.
+     *
+     * @return a key pair, or null when the pool is empty
+     */
+    public MerkleHellmanKnapsackCryptoProject poll() {
+        MerkleHellmanKnapsackCryptoProject key = ready.poll();
+        if (key != null) {
+            depth.decrementAndGet();
+            taken.incrementAndGet();
+        }
+        refill();
+        return key;
+    }
+
+    /**
+     * This method returns the number of ready keys.
+     *
+     * @return the pool depth
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * This method returns the number of ready keys the pool refills to.
+     *
+     * @return the watermark
+     */
+    public int getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * This method returns the number of keys being generated.
+     *
+     * @return the pending generations
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * This method returns the number of keys generated by the background
+     * executor.
+     *
+     * @return the generated key count
+     */
+    public long getGeneratedCount() {
+        return generated.get();
+    }
+
+    /**
+     * This method returns the number of keys handed to callers.
+     *
+     * @return the taken key count
+     */
+    public long getTakenCount() {
+        return taken.get();
+    }
+
+    /**
+     * This method returns the number of keys callers had to generate
+     * themselves because the pool was empty.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * This method returns the average number of keys the background executor
+     * has added per second since the pool was created.
+     *
+     * @return the refill rate in keys per second
+     */
+    public double getRefillRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? generated.get() / seconds : 0;
+    }
+
+    /**
+     * This method returns the average time one background key generation
+     * took.
+     *
+     * @return the average generation time in milliseconds
+     */
+    public double getAverageGenerationMillis() {
+        long count = generated.get();
+        return count > 0 ? generationNanos.get() / 1e6 / count : 0;
+    }
+
+    /**
+     * This method stops the background generation if the pool created its
+     * own executor. Ready keys can still be taken.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * This method submits generations until ready and pending keys reach the
+     * watermark.
+     */
+    private void refill() {
+        while (true) {
+            int scheduled = pending.get();
+            if (depth.get() + scheduled >= watermark || executor.isShutdown()) {
+                return;
+            }
+            if (!pending.compareAndSet(scheduled, scheduled + 1)) {
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long start = System.nanoTime();
+                            MerkleHellmanKnapsackCryptoProject key = generate();
+                            generationNanos.addAndGet(System.nanoTime() - start);
+                            generated.incrementAndGet();
+                            ready.add(key);
+                            depth.incrementAndGet();
+                        } finally {
+                            pending.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //the executor was shut down, keys can only be generated inline
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method generates one key pair.
+     *
+     * @return the new key
+     */
+    private MerkleHellmanKnapsackCryptoProject generate() {
+        return new MerkleHellmanKnapsackCryptoProject(parameters);
+    }
+}
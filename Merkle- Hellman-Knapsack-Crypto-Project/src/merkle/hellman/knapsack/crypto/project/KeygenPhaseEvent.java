@@ -0,0 +1,68 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This class is the Java Flight Recorder event of one key generation phase,
+ * so a recording attributes time and allocation to the sequence build, the
+ * q and r searches and the public key derivation instead of to BigInteger
+ * frames. When recording is off, begin and commit do nothing and the event
+ * object is removed by escape analysis. It is reached only through
+ * {@link KnapsackEvents}, so the project still loads on a JDK without
+ * jdk.jfr.
+ *
+ * @author Anshu Anand
+ */
+@Name("merkle.hellman.knapsack.KeygenPhase")
+@Label("Knapsack Keygen Phase")
+@Category("Merkle Hellman Knapsack")
+@Description("One phase of generating a knapsack key pair")
+final class KeygenPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Key Size")
+    @Description("Number of elements in the knapsack")
+    int keySize;
+
+    /**
+     * This method creates the event of a phase and starts its timing.
+     *
+     * @return the started event, ended when the phase ends
+     */
+    static Object start() {
+        KeygenPhaseEvent event = new KeygenPhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * This method ends an event returned by {@link #start()}.
+     *
+     * @param event the started event
+     * @param phase the name of the phase
+     * @param keySize the knapsack length
+     */
+    static void end(Object event, String phase, int keySize) {
+        ((KeygenPhaseEvent) event).end(phase, keySize);
+    }
+
+    /**
+     * This method fills in and commits the event, if a recording wants it.
+     *
+     * @param phase the name of the phase
+     * @param keySize the knapsack length
+     */
+    void end(String phase, int keySize) {
+        if (shouldCommit()) {
+            this.phase = phase;
+            this.keySize = keySize;
+            commit();
+        }
+    }
+}
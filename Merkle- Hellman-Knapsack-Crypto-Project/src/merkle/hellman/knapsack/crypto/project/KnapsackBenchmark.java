@@ -0,0 +1,770 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * This class measures the latency of Merkel hellman knapsack crypto
+ * operations. Run it with java -cp build/classes
+ * merkle.hellman.knapsack.crypto.project.KnapsackBenchmark [benchmark...]
+ * where each benchmark is one of api, batch, cache, keygen, parallel, table,
+ * decrypt, reduce, alloc, footprint, keyfile or service. With no arguments every benchmark runs.
+ * Adding large to keygen also generates {@value #LARGE_KEY_SIZE} element
+ * keys, which take many minutes.
+ *
+ * The api benchmark is the baseline for the public entry points. For every
+ * key size and message length it reports throughput, average time and the
+ * heap allocated per operation with the collections it caused, the three
+ * views of a JMH run with the gc profiler, using only the JDK.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackBenchmark {
+
+    //knapsack sizes measured by the key generation benchmark
+    private final static int[] KEY_SIZES = {640, 2048};
+    //knapsack size the key generation benchmark adds when asked for large keys
+    private final static int LARGE_KEY_SIZE = 8192;
+    //modulus sizes in bits measured by the reduction benchmark
+    private final static int[] MODULUS_SIZES = {640, 2048, 8192};
+    //bytes of input used by the throughput benchmarks
+    private final static int PAYLOAD_SIZE = 4 * 1024 * 1024;
+    //number of blocks timed by the single block latency benchmarks
+    private final static int BLOCK_ROUNDS = 20000;
+    //knapsack sizes measured by the api benchmark
+    private final static int[] API_KEY_SIZES = {640, 2048};
+    //message lengths in characters measured by the api benchmark
+    private final static int[] MESSAGE_LENGTHS = {8, 64, 256};
+    //time spent warming up and then measuring each api operation
+    private final static long WARMUP_NANOS = 300000000L;
+    private final static long MEASURE_NANOS = 700000000L;
+    //results of measured operations, so the JIT cannot drop the calls
+    private static volatile Object sink;
+
+    /**
+     * This method is main driver for the benchmarks
+     *
+     * @param args the names of the benchmarks to run, all when empty
+     * @throws Exception if a benchmark channel or connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> selected = Arrays.asList(args);
+        if (selected.isEmpty() || selected.contains("api")) {
+            benchmarkApi();
+        }
+        if (selected.isEmpty() || selected.contains("batch")) {
+            benchmarkBatch();
+        }
+        if (selected.isEmpty() || selected.contains("cache")) {
+            benchmarkCache();
+        }
+        if (selected.isEmpty() || selected.contains("keygen")) {
+            benchmarkKeygen(selected.contains("large"));
+        }
+        if (selected.isEmpty() || selected.contains("parallel")) {
+            benchmarkParallel();
+        }
+        if (selected.isEmpty() || selected.contains("table")) {
+            benchmarkEncryptionTable();
+        }
+        if (selected.isEmpty() || selected.contains("decrypt")) {
+            benchmarkDecryptionContext();
+        }
+        if (selected.isEmpty() || selected.contains("reduce")) {
+            benchmarkReduction();
+        }
+        if (selected.isEmpty() || selected.contains("alloc")) {
+            benchmarkAllocation();
+        }
+        if (selected.isEmpty() || selected.contains("footprint")) {
+            benchmarkFootprint();
+        }
+        if (selected.isEmpty() || selected.contains("keyfile")) {
+            benchmarkKeyFile();
+        }
+        if (selected.isEmpty() || selected.contains("service")) {
+            benchmarkService();
+        }
+    }
+
+    /**
+     * This method measures the constructor, encryptData, decryptData and
+     * ConvertToBinary across key sizes and message lengths, and getObjectAt
+     * and iteration of a SinglyLinkedList holding a key.
+     */
+    private static void benchmarkApi() {
+        System.out.println("API baseline");
+        System.out.printf("  %-40s %12s %12s %12s %8s%n", "operation", "ops/s", "us/op", "bytes/op", "gc");
+        for (int size : API_KEY_SIZES) {
+            final KnapsackParameters parameters = parameters(size);
+            measure("constructor, " + size + " elements", 1, () -> new MerkleHellmanKnapsackCryptoProject(parameters));
+            final MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject(parameters);
+            Random random = new Random(size);
+            for (int length : MESSAGE_LENGTHS) {
+                if (length > crypto.getBlockSize()) {
+                    continue;
+                }
+                char[] characters = new char[length];
+                for (int i = 0; i < length; i++) {
+                    characters[i] = (char) ('a' + random.nextInt(26));
+                }
+                final String message = new String(characters);
+                final BigInteger encrypted = crypto.encryptData(message);
+                String label = size + " elements, " + length + " chars";
+                measure("encryptData, " + label, BLOCK_ROUNDS, () -> crypto.encryptData(message));
+                measure("decryptData, " + label, BLOCK_ROUNDS, () -> crypto.decryptData(encrypted));
+                measure("ConvertToBinary, " + label, BLOCK_ROUNDS, () -> crypto.ConvertToBinary(message));
+            }
+            final SinglyLinkedList list = new SinglyLinkedList();
+            for (BigInteger element : crypto.getB()) {
+                list.addAtEndNode(element);
+            }
+            final int last = size - 1;
+            measure("getObjectAt last, " + size + " nodes", BLOCK_ROUNDS, () -> list.getObjectAt(last));
+            measure("iteration, " + size + " nodes", BLOCK_ROUNDS, () -> {
+                Object element = null;
+                list.reset();
+                while (list.hasNext()) {
+                    element = list.next();
+                }
+                return element;
+            });
+        }
+    }
+
+    /**
+     * This method compares a batch of short records encrypted and decrypted
+     * one call at a time against the batch methods, per record.
+     */
+    private static void benchmarkBatch() {
+        final int records = 256;
+        System.out.println("Batch of " + records + " records, per record");
+        System.out.printf("  %-40s %12s %12s %12s %8s%n", "operation", "ops/s", "us/op", "bytes/op", "gc");
+        final MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject();
+        Random random = new Random(records);
+        final String[] messages = new String[records];
+        for (int i = 0; i < records; i++) {
+            char[] characters = new char[8 + random.nextInt(24)];
+            for (int j = 0; j < characters.length; j++) {
+                characters[j] = (char) ('a' + random.nextInt(26));
+            }
+            messages[i] = new String(characters);
+        }
+        final BigInteger[] encrypted = new BigInteger[records];
+        final String[] decrypted = new String[records];
+        crypto.encryptBatch(messages, encrypted);
+        //each operation below handles one record, so the figures are per record
+        final int[] next = new int[1];
+        measure("encryptData loop", BLOCK_ROUNDS, () -> crypto.encryptData(messages[next[0]++ & (records - 1)]));
+        measure("decryptData loop", BLOCK_ROUNDS, () -> crypto.decryptData(encrypted[next[0]++ & (records - 1)]));
+        final BigInteger[] results = new BigInteger[records];
+        measure("encryptBatch / " + records, 1, new Operation() {
+            private int calls;
+
+            @Override
+            public Object run() {
+                //one batch every records calls keeps the figure per record
+                if (calls++ % records == 0) {
+                    crypto.encryptBatch(messages, results);
+                }
+                return results;
+            }
+        });
+        measure("decryptBatch / " + records, 1, new Operation() {
+            private int calls;
+
+            @Override
+            public Object run() {
+                if (calls++ % records == 0) {
+                    crypto.decryptBatch(encrypted, decrypted);
+                }
+                return decrypted;
+            }
+        });
+        for (int i = 0; i < records; i++) {
+            if (!decrypted[i].equals(messages[i]) || !results[i].equals(encrypted[i])) {
+                throw new IllegalStateException("The batch results differ from the single calls at record " + i + ".");
+            }
+        }
+    }
+
+    /**
+     * This method compares encrypting a small set of identifiers that repeat
+     * constantly with and without an {@link EncryptionCache} in front.
+     */
+    private static void benchmarkCache() {
+        final int identifiers = 64;
+        System.out.println("Cache of " + identifiers + " repeated identifiers");
+        System.out.printf("  %-40s %12s %12s %12s %8s%n", "operation", "ops/s", "us/op", "bytes/op", "gc");
+        final MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject();
+        final String[] messages = new String[identifiers];
+        for (int i = 0; i < identifiers; i++) {
+            messages[i] = String.format("user-%08d", i * 7919);
+        }
+        final EncryptionCache cache = new EncryptionCache(4 * identifiers);
+        final int[] next = new int[1];
+        measure("encryptData", BLOCK_ROUNDS, () -> crypto.encryptData(messages[next[0]++ & (identifiers - 1)]));
+        measure("EncryptionCache.encryptData", BLOCK_ROUNDS, () -> cache.encryptData(crypto, messages[next[0]++ & (identifiers - 1)]));
+        for (String message : messages) {
+            if (!cache.encryptData(crypto, message).equals(crypto.encryptData(message))) {
+                throw new IllegalStateException("The cached result of [" + message + "] differs.");
+            }
+        }
+        System.out.printf("  hits %d, misses %d, evictions %d%n", cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount());
+    }
+
+    /**
+     * This method warms an operation up, then runs it for a fixed time and
+     * prints its throughput, average time, heap allocated per operation and
+     * the number of collections during the measurement. Allocation relies on
+     * the HotSpot thread allocation counter.
+     *
+     * @param name the label of the operation
+     * @param batch the number of calls between clock reads
+     * @param operation the operation, returning its result
+     */
+    private static void measure(String name, int batch, Operation operation) {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            for (int i = 0; i < batch; i++) {
+                sink = operation.run();
+            }
+        }
+        long collections = collectionCount();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long operations = 0;
+        start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < batch; i++) {
+                sink = operation.run();
+            }
+            operations += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        collections = collectionCount() - collections;
+        System.out.printf("  %-40s %12.0f %12.3f %12d %8d%n", name, operations / (elapsed / 1e9),
+                elapsed / 1e3 / operations, allocated / operations, collections);
+    }
+
+    /**
+     * This method returns the number of collections run by every collector.
+     *
+     * @return the total collection count
+     */
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * This method reports the average time taken to build a key pair for
+     * each of the measured knapsack sizes: by the constructor, for
+     * reference, and by the parallel generator on one worker and on every
+     * core. The two generators are seeded alike, so they build the same keys
+     * with the same sieve and prime tests, and their ratio is the gain from
+     * parallelism alone.
+     *
+     * @param large true to measure {@value #LARGE_KEY_SIZE} elements as well
+     * @throws NoSuchAlgorithmException if the seeded generator is missing
+     */
+    private static void benchmarkKeygen(boolean large) throws NoSuchAlgorithmException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Key generation latency, parallel on " + cores + " threads");
+        int[] sizes = Arrays.copyOf(KEY_SIZES, KEY_SIZES.length + (large ? 1 : 0));
+        if (large) {
+            sizes[KEY_SIZES.length] = LARGE_KEY_SIZE;
+        }
+        for (int size : sizes) {
+            //larger keys spend much longer in the prime searches
+            int rounds = Math.max(1, 6400 / size);
+            KnapsackParameters parameters = parameters(size);
+            //warm up the JIT before measuring
+            new MerkleHellmanKnapsackCryptoProject(parameters);
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                new MerkleHellmanKnapsackCryptoProject(parameters);
+            }
+            long constructor = System.nanoTime() - start;
+            long oneWorker = generateNanos(1, parameters, rounds);
+            long allWorkers = generateNanos(cores, parameters, rounds);
+            System.out.printf("  %5d elements: constructor %10.2f ms, 1 worker %10.2f ms, %d workers %10.2f ms, speedup %5.2fx%n",
+                    size, constructor / 1e6 / rounds, oneWorker / 1e6 / rounds, cores,
+                    allWorkers / 1e6 / rounds, (double) oneWorker / allWorkers);
+        }
+    }
+
+    /**
+     * This method times a parallel generator seeded with a fixed seed, so
+     * every call builds the same keys whatever the parallelism.
+     *
+     * @param parallelism the number of worker threads
+     * @param parameters the sizes of the keys
+     * @param rounds the number of keys timed
+     * @return the nanoseconds taken by the timed keys
+     * @throws NoSuchAlgorithmException if the seeded generator is missing
+     */
+    private static long generateNanos(int parallelism, KnapsackParameters parameters, int rounds) throws NoSuchAlgorithmException {
+        SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+        //seeded before first use, SHA1PRNG repeats the same sequence
+        random.setSeed(42);
+        ParallelKeyGenerator generator = new ParallelKeyGenerator(parallelism, random);
+        try {
+            //warm up the JIT before measuring
+            generator.generate(parameters);
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                generator.generate(parameters);
+            }
+            return System.nanoTime() - start;
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * This method reports encryption and decryption throughput of a multi
+     * megabyte payload for every parallelism level from 1 to the core count.
+     *
+     * @throws IOException if a benchmark channel fails
+     */
+    private static void benchmarkParallel() throws IOException {
+        MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject();
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        new KnapsackStreamCipher(crypto).encrypt(new ByteArrayInputStream(payload), Channels.newChannel(frames));
+        byte[] ciphertext = frames.toByteArray();
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Parallel throughput, " + PAYLOAD_SIZE / (1024 * 1024) + " MB payload, " + cores + " cores");
+        for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+            long encrypt;
+            long decrypt;
+            try (ParallelKnapsackCipher cipher = new ParallelKnapsackCipher(crypto, parallelism)) {
+                //warm up the JIT before measuring
+                cipher.encrypt(Channels.newChannel(new ByteArrayInputStream(payload)), new DiscardChannel());
+                long start = System.nanoTime();
+                cipher.encrypt(Channels.newChannel(new ByteArrayInputStream(payload)), new DiscardChannel());
+                encrypt = System.nanoTime() - start;
+                start = System.nanoTime();
+                cipher.decrypt(Channels.newChannel(new ByteArrayInputStream(ciphertext)), new DiscardChannel());
+                decrypt = System.nanoTime() - start;
+            }
+            System.out.printf("  %3d threads: encrypt %8.2f MB/s, decrypt %8.2f MB/s%n",
+                    parallelism, megabytesPerSecond(PAYLOAD_SIZE, encrypt), megabytesPerSecond(PAYLOAD_SIZE, decrypt));
+        }
+    }
+
+    /**
+     * This method reports single block encryption latency with and without
+     * the precomputed encryption table, and the memory the table takes.
+     */
+    private static void benchmarkEncryptionTable() {
+        System.out.println("Encryption latency, per block");
+        for (int size : new int[]{640, 2048}) {
+            KnapsackParameters.Builder builder = new KnapsackParameters.Builder().knapsackLength(size);
+            MerkleHellmanKnapsackCryptoProject plain = new MerkleHellmanKnapsackCryptoProject(builder.build());
+            MerkleHellmanKnapsackCryptoProject table = new MerkleHellmanKnapsackCryptoProject(builder.precomputedEncryption(true).build());
+            byte[] block = new byte[plain.getBlockSize()];
+            new Random(size).nextBytes(block);
+            System.out.printf("  %5d elements: list walk %8.2f us, table %8.2f us, table footprint %8d KB%n",
+                    size, encryptMicros(plain, block), encryptMicros(table, block),
+                    table.getEncryptionTableFootprint() / 1024);
+        }
+    }
+
+    /**
+     * This method measures the average time to encrypt one block.
+     *
+     * @param crypto the key to encrypt with
+     * @param block the plaintext block
+     * @return the average latency in microseconds
+     */
+    private static double encryptMicros(MerkleHellmanKnapsackCryptoProject crypto, byte[] block) {
+        //warm up the JIT before measuring
+        for (int i = 0; i < BLOCK_ROUNDS; i++) {
+            crypto.encryptBlock(block, 0, block.length);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BLOCK_ROUNDS; i++) {
+            crypto.encryptBlock(block, 0, block.length);
+        }
+        return (System.nanoTime() - start) / 1e3 / BLOCK_ROUNDS;
+    }
+
+    /**
+     * This method reports single block decryption latency when r inverse is
+     * computed on every call, as decryptData used to, against the shared
+     * decryption context.
+     */
+    private static void benchmarkDecryptionContext() {
+        System.out.println("Decryption latency, per block");
+        for (int size : new int[]{640, 2048}) {
+            MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject(parameters(size));
+            byte[] block = new byte[crypto.getBlockSize()];
+            new Random(size).nextBytes(block);
+            BigInteger encrypted = crypto.encryptBlock(block, 0, block.length);
+            DecryptionContext context = crypto.getDecryptionContext();
+            DecryptionContext.Scratch scratch = context.newScratch();
+            //warm up the JIT before measuring
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                crypto.newDecryptionContext().decryptBlock(encrypted, block, 0);
+                context.decryptBlock(encrypted, block, 0, scratch);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                crypto.newDecryptionContext().decryptBlock(encrypted, block, 0);
+            }
+            long perCall = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                context.decryptBlock(encrypted, block, 0, scratch);
+            }
+            long shared = System.nanoTime() - start;
+            System.out.printf("  %5d elements: inverse per call %8.2f us, shared context %8.2f us%n",
+                    size, perCall / 1e3 / BLOCK_ROUNDS, shared / 1e3 / BLOCK_ROUNDS);
+        }
+    }
+
+    /**
+     * This method cross checks every arithmetic backend against BigInteger
+     * on random inputs, then reports the latency of one multiplication mod q
+     * across modulus sizes. The modulus only needs to be odd, so random odd
+     * numbers stand in for q instead of slow prime searches.
+     */
+    private static void benchmarkReduction() {
+        System.out.println("Multiplication mod q latency");
+        Random random = new Random(7);
+        for (int size : MODULUS_SIZES) {
+            BigInteger modulus = new BigInteger(size + 4, random).setBit(size + 3).setBit(0);
+            BigInteger factor = new BigInteger(size + 4, random).mod(modulus);
+            //ciphertexts are sums of up to size elements below q
+            BigInteger[] inputs = new BigInteger[64];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = new BigInteger(size + 4 + 31 - Integer.numberOfLeadingZeros(size), random);
+            }
+            System.out.printf("  %5d bits:", size);
+            for (ArithmeticBackend backend : ArithmeticBackend.values()) {
+                ModularMultiplier multiplier = backend.create(factor, modulus);
+                for (BigInteger input : inputs) {
+                    if (!multiplier.multiply(input).equals(factor.multiply(input).mod(modulus))) {
+                        throw new IllegalStateException(backend + " disagrees with BigInteger for modulus " + modulus);
+                    }
+                }
+                System.out.printf(" %s %8.2f us", backend, multiplyMicros(multiplier, inputs));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * This method measures the average time of one multiplication.
+     *
+     * @param multiplier the multiplier to measure
+     * @param inputs the numbers to multiply, used in turn
+     * @return the average latency in microseconds
+     */
+    private static double multiplyMicros(ModularMultiplier multiplier, BigInteger[] inputs) {
+        //warm up the JIT before measuring
+        for (int i = 0; i < BLOCK_ROUNDS; i++) {
+            multiplier.multiply(inputs[i % inputs.length]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < BLOCK_ROUNDS; i++) {
+            multiplier.multiply(inputs[i % inputs.length]);
+        }
+        return (System.nanoTime() - start) / 1e3 / BLOCK_ROUNDS;
+    }
+
+    /**
+     * This method reports the heap allocated by one string encryption and
+     * decryption, with and without caller supplied buffers. It relies on the
+     * HotSpot thread allocation counter.
+     */
+    private static void benchmarkAllocation() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject();
+        String message = "Welcome to Data Structures and Algorithms";
+        byte[] block = new byte[crypto.getBlockSize()];
+        StringBuilder out = new StringBuilder(crypto.getBlockSize());
+        BigInteger encrypted = crypto.encryptData(message);
+        long[] bytes = new long[4];
+        //the first pass warms up the JIT, the second is measured
+        for (int pass = 0; pass < 2; pass++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                crypto.encryptData(message);
+            }
+            long encryptString = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                crypto.encryptData(message, block);
+            }
+            long encryptBuffer = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                crypto.decryptData(encrypted);
+            }
+            long decryptString = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < BLOCK_ROUNDS; i++) {
+                out.setLength(0);
+                crypto.decryptData(encrypted, block, out);
+            }
+            long decryptBuffer = threads.getThreadAllocatedBytes(thread);
+            bytes[0] = encryptString - before;
+            bytes[1] = encryptBuffer - encryptString;
+            bytes[2] = decryptString - encryptBuffer;
+            bytes[3] = decryptBuffer - decryptString;
+        }
+        System.out.println("Heap allocated per call, " + message.length() + " characters");
+        System.out.printf("  encryptData(String)                     %8d bytes%n", bytes[0] / BLOCK_ROUNDS);
+        System.out.printf("  encryptData(String, byte[])             %8d bytes%n", bytes[1] / BLOCK_ROUNDS);
+        System.out.printf("  decryptData(BigInteger)                 %8d bytes%n", bytes[2] / BLOCK_ROUNDS);
+        System.out.printf("  decryptData(BigInteger, byte[], buffer) %8d bytes%n", bytes[3] / BLOCK_ROUNDS);
+    }
+
+    /**
+     * This method measures the heap retained by the elements of w and b per
+     * key. Before is the former layout: a SinglyLinkedList of BigIntegers and
+     * an indexed BigInteger array for each of w and b, sharing the
+     * BigIntegers, plus the limb copy of w the decoder kept. After is the
+     * contiguous limbs of {@link KnapsackElements} that the key, the encoder
+     * and the decoder now share.
+     */
+    private static void benchmarkFootprint() {
+        final int copies = 20;
+        System.out.println("Key element footprint, retained heap per key");
+        ParallelKeyGenerator generator = new ParallelKeyGenerator();
+        try {
+            for (int size : API_KEY_SIZES) {
+                final MerkleHellmanKnapsackCryptoProject crypto = generator.generate(parameters(size));
+                final BigInteger[] w = crypto.getW();
+                final BigInteger[] b = crypto.getB();
+                final int wStride = Limbs.count(crypto.getQ());
+                final int bStride = ((crypto.getMaxCipherLength() - 1) * 8 + 31) / 32;
+                long before = retainedBytes(copies, () -> {
+                    Object[] layout = new Object[5];
+                    BigInteger[][] sequences = {copy(w), copy(b)};
+                    for (int k = 0; k < 2; k++) {
+                        SinglyLinkedList list = new SinglyLinkedList();
+                        for (BigInteger element : sequences[k]) {
+                            list.addAtEndNode(element);
+                        }
+                        layout[2 * k] = list;
+                        layout[2 * k + 1] = sequences[k];
+                    }
+                    layout[4] = new KnapsackElements(w, wStride);
+                    return layout;
+                });
+                long after = retainedBytes(copies, () -> new Object[]{
+                    new KnapsackElements(w, wStride), new KnapsackElements(b, bStride)});
+                System.out.printf("  %5d elements: before %9d bytes, after %9d bytes (%.1fx smaller), computed %9d bytes%n",
+                        size, before, after, (double) before / after, crypto.getFootprint());
+            }
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * This method returns copies of numbers, so every layout measured owns
+     * its own BigIntegers.
+     *
+     * @param values the numbers
+     * @return new BigIntegers of the same values
+     */
+    private static BigInteger[] copy(BigInteger[] values) {
+        BigInteger[] copies = new BigInteger[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copies[i] = new BigInteger(values[i].toByteArray());
+        }
+        return copies;
+    }
+
+    /**
+     * This method builds several copies of a structure and returns the heap
+     * each retains, from the used heap after full collections.
+     *
+     * @param copies the number of copies held at once
+     * @param build builds one copy
+     * @return the retained bytes per copy
+     */
+    private static long retainedBytes(int copies, Operation build) {
+        Object[] held = new Object[copies];
+        long empty = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            held[i] = build.run();
+        }
+        long full = usedHeap();
+        sink = held;
+        sink = null;
+        return (full - empty) / copies;
+    }
+
+    /**
+     * This method returns the used heap after collecting garbage.
+     *
+     * @return the used heap in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * This method reports how long a saved key takes to load, whole and
+     * public part only, compared with generating it.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    private static void benchmarkKeyFile() throws IOException {
+        System.out.println("Key file load latency and heap allocated per load");
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Path path = Files.createTempFile("knapsack", ".key");
+        try {
+            for (int size : new int[]{640, 2048}) {
+                MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject(parameters(size));
+                KeyFile.save(crypto, path);
+                //warm up the JIT before measuring
+                for (int i = 0; i < 200; i++) {
+                    KeyFile.load(path);
+                    KeyFile.loadPublicKey(path);
+                }
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                for (int i = 0; i < 200; i++) {
+                    sink = KeyFile.load(path);
+                }
+                long whole = System.nanoTime() - start;
+                long wholeBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                allocated = threads.getThreadAllocatedBytes(thread);
+                start = System.nanoTime();
+                for (int i = 0; i < 200; i++) {
+                    sink = KeyFile.loadPublicKey(path);
+                }
+                long publicPart = System.nanoTime() - start;
+                long publicBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+                System.out.printf("  %5d elements, %7d byte file: key pair %8.2f us %8d bytes, public key %8.2f us %8d bytes%n",
+                        size, Files.size(path), whole / 1e3 / 200, wholeBytes / 200, publicPart / 1e3 / 200, publicBytes / 200);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * This method runs a local encryption service and reports throughput
+     * and tail latency of the load client, without and with pipelining.
+     *
+     * @throws Exception if the service or a connection fails
+     */
+    private static void benchmarkService() throws Exception {
+        final KnapsackServer server = new KnapsackServer(new MerkleHellmanKnapsackCryptoProject());
+        Thread loop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.run();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "knapsack-service");
+        loop.start();
+        System.out.println("Loopback service, 64 byte payloads, alternating encrypt and decrypt");
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        //warm up the JIT before measuring
+        new KnapsackLoadClient(address, 1, 16, 5000, 64).run();
+        for (int connections : new int[]{1, 4}) {
+            for (int depth : new int[]{1, 16}) {
+                System.out.println("  " + new KnapsackLoadClient(address, connections, depth, 5000, 64).run());
+            }
+        }
+        server.close();
+        loop.join();
+    }
+
+    /**
+     * This method converts a byte count and elapsed time to MB/s.
+     *
+     * @param bytes the number of bytes processed
+     * @param nanos the elapsed time in nanoseconds
+     * @return the throughput in MB/s
+     */
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    /**
+     * This method builds parameters for a knapsack of the given length.
+     *
+     * @param size the number of elements in the knapsack
+     * @return the parameters
+     */
+    private static KnapsackParameters parameters(int size) {
+        return new KnapsackParameters.Builder().knapsackLength(size).build();
+    }
+
+    /**
+     * This interface is one call measured by the api benchmark.
+     */
+    private interface Operation {
+
+        /**
+         * This method runs the call once.
+         *
+         * @return the result of the call
+         */
+        Object run();
+    }
+
+    /**
+     * This class is a channel dropping everything written to it, so the
+     * benchmarks measure the cipher and not the output.
+     */
+    private static class DiscardChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This class stores the elements of a knapsack sequence, w or b, in one
+ * contiguous int array. Every element takes the same number of 32 bit
+ * little endian limbs, so element i starts at limb i * stride, and the
+ * number of limbs it actually uses is kept beside it. A 640 element key is
+ * then two arrays instead of 640 BigIntegers, each with its own magnitude
+ * array, and the encrypt and decrypt loops read the limbs by index.
+ *
+ * @author Anshu Anand
+ */
+final class KnapsackElements {
+
+    //bytes taken by an object header on a 64 bit VM with compressed pointers
+    private final static int OBJECT_HEADER = 16;
+
+    //limbs per element
+    private final int stride;
+    //element i takes limbs i * stride to i * stride + stride - 1
+    private final int[] limbs;
+    //number of limbs element i uses, the rest are zero
+    private final int[] lengths;
+
+    /**
+     * This is the constructor for the storage of a sequence.
+     *
+     * @param elements the non negative elements
+     * @param stride the limbs per element, enough for the largest
+     * @exception IllegalArgumentException Indicates that an element does not
+     * fit the stride
+     */
+    KnapsackElements(BigInteger[] elements, int stride) {
+        this.stride = stride;
+        this.limbs = new int[elements.length * stride];
+        this.lengths = new int[elements.length];
+        int[] element = new int[stride];
+        for (int i = 0; i < elements.length; i++) {
+            Limbs.toLimbs(elements[i], element);
+            System.arraycopy(element, 0, limbs, i * stride, stride);
+            lengths[i] = (elements[i].bitLength() + 31) / 32;
+        }
+    }
+
+    /**
+     * This method returns the number of elements.
+     *
+     * @return the element count
+     */
+    int size() {
+        return lengths.length;
+    }
+
+    /**
+     * This method returns the number of limbs each element takes.
+     *
+     * @return the stride
+     */
+    int getStride() {
+        return stride;
+    }
+
+    /**
+     * This method returns the limbs of every element, element i from index
+     * i * stride. The array is shared, not copied, and must not be changed.
+     *
+     * @return the limbs
+     */
+    int[] getLimbs() {
+        return limbs;
+    }
+
+    /**
+     * This method returns the number of limbs every element uses. The array
+     * is shared, not copied, and must not be changed.
+     *
+     * @return the used limb counts
+     */
+    int[] getLengths() {
+        return lengths;
+    }
+
+    /**
+     * This method returns one element as a BigInteger.
+     *
+     * @param i the element
+     * @return a new BigInteger of the element
+     */
+    BigInteger get(int i) {
+        return Limbs.fromLimbs(limbs, i * stride, Math.max(lengths[i], 1));
+    }
+
+    /**
+     * This method returns every element as a BigInteger, for the rare paths
+     * that need them, such as saving the key.
+     *
+     * @return a new array of the elements
+     */
+    BigInteger[] toArray() {
+        BigInteger[] elements = new BigInteger[size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = get(i);
+        }
+        return elements;
+    }
+
+    /**
+     * This method returns the bit length of the largest element.
+     *
+     * @return the largest bit length
+     */
+    int getMaxBitLength() {
+        int bits = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            int length = lengths[i];
+            if (length > 0) {
+                int top = limbs[i * stride + length - 1];
+                bits = Math.max(bits, 32 * length - Integer.numberOfLeadingZeros(top));
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * This method returns the number of heap bytes the storage takes: this
+     * object and its two arrays.
+     *
+     * @return the footprint in bytes
+     */
+    long getFootprint() {
+        return align(OBJECT_HEADER + 4 * 3) + align(OBJECT_HEADER + 4L * limbs.length)
+                + align(OBJECT_HEADER + 4L * lengths.length);
+    }
+
+    /**
+     * This method rounds a size up to the 8 byte object alignment.
+     *
+     * @param bytes the unaligned size
+     * @return the aligned size
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
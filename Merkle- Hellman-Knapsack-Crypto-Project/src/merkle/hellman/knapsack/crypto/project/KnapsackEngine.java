@@ -0,0 +1,156 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is one encryption engine shared by every request thread. It
+ * holds an immutable snapshot of the current key and the key it replaced
+ * in an {@link AtomicReference}. Each operation reads the snapshot once and
+ * works on that key to the end, so rotation is a single reference swap:
+ * operations already running finish on the old key, nothing waits, and no
+ * lock is taken on any path.
+ *
+ * Ciphertext is written in {@link CiphertextFormat}, whose key id lets the
+ * engine still decrypt messages of the previous key after a rotation.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackEngine {
+
+    private final AtomicReference<Snapshot> snapshot;
+    //cache of encrypted blocks, null for none
+    private final EncryptionCache cache;
+
+    /**
+     * This is the constructor for an engine starting with the given key.
+     *
+     * @param key the first key
+     */
+    public KnapsackEngine(MerkleHellmanKnapsackCryptoProject key) {
+        this(key, null);
+    }
+
+    /**
+     * This is the constructor for an engine starting with the given key
+     * that answers repeated blocks from a cache. The cache drops its
+     * entries on rotation.
+     *
+     * @param key the first key
+     * @param cache the cache of encrypted blocks, null for none
+     */
+    public KnapsackEngine(MerkleHellmanKnapsackCryptoProject key, EncryptionCache cache) {
+        this.snapshot = new AtomicReference<>(new Snapshot(key, null, 0));
+        this.cache = cache;
+    }
+
+    /**
+     * This method returns the key new messages are encrypted with.
+     *
+     * @return the current key
+     */
+    public MerkleHellmanKnapsackCryptoProject getKey() {
+        return snapshot.get().current;
+    }
+
+    /**
+     * This method returns the number of rotations so far.
+     *
+     * @return the rotation count
+     */
+    public long getRotationCount() {
+        return snapshot.get().rotations;
+    }
+
+    /**
+     * This method makes the given key current. The replaced key stays able
+     * to decrypt until the next rotation.
+     *
+     * @param next the new key
+     * @return the replaced key
+     */
+    public MerkleHellmanKnapsackCryptoProject rotate(MerkleHellmanKnapsackCryptoProject next) {
+        while (true) {
+            Snapshot old = snapshot.get();
+            if (snapshot.compareAndSet(old, new Snapshot(next, old.current, old.rotations + 1))) {
+                if (cache != null) {
+                    cache.invalidate();
+                }
+                return old.current;
+            }
+        }
+    }
+
+    /**
+     * This method returns the largest number of bytes a message of the
+     * given plaintext length can take with the current key.
+     *
+     * @param length the number of plaintext bytes
+     * @return the bound in bytes
+     */
+    public long getMaxEncodedLength(long length) {
+        return CiphertextFormat.getMaxEncodedLength(getKey(), length);
+    }
+
+    /**
+     * This method encrypts bytes into a message with the current key.
+     *
+     * @param data the plaintext
+     * @param offset the position of the first plaintext byte
+     * @param length the number of plaintext bytes
+     * @param out receives the message, with {@link #getMaxEncodedLength}
+     * bytes remaining
+     * @return the number of blocks written
+     */
+    public int encrypt(byte[] data, int offset, int length, ByteBuffer out) {
+        return CiphertextFormat.encrypt(getKey(), cache, data, offset, length, out);
+    }
+
+    /**
+     * This method encrypts the remaining bytes of a buffer, heap or direct,
+     * into a message with the current key.
+     *
+     * @param in the plaintext between position and limit, moved to its limit
+     * @param out receives the message, with {@link #getMaxEncodedLength}
+     * bytes remaining
+     * @return the number of blocks written
+     */
+    public int encrypt(ByteBuffer in, ByteBuffer out) {
+        return CiphertextFormat.encrypt(getKey(), cache, in, out);
+    }
+
+    /**
+     * This method decrypts a message of the current or the previous key.
+     *
+     * @param in the message at its position, which is moved past it
+     * @return the plaintext
+     * @exception IllegalArgumentException Indicates that the message is
+     * corrupt or of neither key
+     */
+    public byte[] decrypt(ByteBuffer in) {
+        Snapshot keys = snapshot.get();
+        long id = CiphertextFormat.readKeyId(in);
+        if (keys.previous != null && keys.previous.getKeyId() == id) {
+            return CiphertextFormat.decrypt(keys.previous, in);
+        }
+        //a message of an unknown key is refused by the current key
+        return CiphertextFormat.decrypt(keys.current, in);
+    }
+
+    /**
+     * This class is one immutable state of the engine.
+     */
+    private static final class Snapshot {
+
+        private final MerkleHellmanKnapsackCryptoProject current;
+        //the key current replaced, null before the first rotation
+        private final MerkleHellmanKnapsackCryptoProject previous;
+        private final long rotations;
+
+        Snapshot(MerkleHellmanKnapsackCryptoProject current, MerkleHellmanKnapsackCryptoProject previous, long rotations) {
+            this.current = current;
+            this.previous = previous;
+            this.rotations = rotations;
+        }
+    }
+}
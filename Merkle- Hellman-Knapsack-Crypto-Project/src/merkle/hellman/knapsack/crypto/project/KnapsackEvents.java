@@ -0,0 +1,108 @@
+package merkle.hellman.knapsack.crypto.project;
+
+/**
+ * This class starts and ends the Java Flight Recorder events of the
+ * project. The project targets Java 8, which has no jdk.jfr, so the event
+ * classes are reached only from here and only when jdk.jfr.Event can be
+ * loaded. Callers hold an event as an Object, null when there is no flight
+ * recorder, and nothing here names a jdk.jfr type, so this class loads on
+ * any JDK.
+ *
+ * @author Anshu Anand
+ */
+final class KnapsackEvents {
+
+    //names of the key generation phases
+    final static String SEQUENCE = "sequence";
+    final static String Q_SEARCH = "q search";
+    final static String R_SEARCH = "r search";
+    final static String DERIVATION = "public key derivation";
+
+    //true when the running JDK has the flight recorder
+    private final static boolean AVAILABLE = isAvailable();
+
+    private KnapsackEvents() {
+    }
+
+    /**
+     * This method starts the event of one encryption call.
+     *
+     * @return the started event, null when there is no flight recorder
+     */
+    static Object beginEncrypt() {
+        return AVAILABLE ? EncryptEvent.start() : null;
+    }
+
+    /**
+     * This method ends the event of one encryption call.
+     *
+     * @param event the event returned by {@link #beginEncrypt()}
+     * @param blockCount the number of blocks encrypted
+     * @param keySize the knapsack length
+     * @param bytes the number of plaintext bytes
+     */
+    static void endEncrypt(Object event, long blockCount, int keySize, long bytes) {
+        if (event != null) {
+            EncryptEvent.end(event, blockCount, keySize, bytes);
+        }
+    }
+
+    /**
+     * This method starts the event of one decryption call.
+     *
+     * @return the started event, null when there is no flight recorder
+     */
+    static Object beginDecrypt() {
+        return AVAILABLE ? DecryptEvent.start() : null;
+    }
+
+    /**
+     * This method ends the event of one decryption call.
+     *
+     * @param event the event returned by {@link #beginDecrypt()}
+     * @param blockCount the number of blocks decrypted
+     * @param keySize the knapsack length
+     * @param bytes the number of plaintext bytes
+     */
+    static void endDecrypt(Object event, long blockCount, int keySize, long bytes) {
+        if (event != null) {
+            DecryptEvent.end(event, blockCount, keySize, bytes);
+        }
+    }
+
+    /**
+     * This method starts the event of one key generation phase.
+     *
+     * @return the started event, null when there is no flight recorder
+     */
+    static Object beginKeygenPhase() {
+        return AVAILABLE ? KeygenPhaseEvent.start() : null;
+    }
+
+    /**
+     * This method ends the event of one key generation phase.
+     *
+     * @param event the event returned by {@link #beginKeygenPhase()}
+     * @param phase the name of the phase
+     * @param keySize the knapsack length
+     */
+    static void endKeygenPhase(Object event, String phase, int keySize) {
+        if (event != null) {
+            KeygenPhaseEvent.end(event, phase, keySize);
+        }
+    }
+
+    /**
+     * This method checks for the flight recorder without initializing it.
+     *
+     * @return true when jdk.jfr.Event can be loaded
+     */
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, KnapsackEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class encrypts and decrypts whole files in the frame format of
+ * {@link KnapsackStreamCipher}. The input is read through memory mapped
+ * regions of a FileChannel, so a file of many gigabytes is never copied
+ * onto the heap, and the frames are gathered in a direct buffer that is
+ * written to the output channel whenever it fills.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackFileCipher {
+
+    //bytes of input mapped at a time
+    private final static int REGION_SIZE = 64 * 1024 * 1024;
+    //bytes of output gathered before each write
+    private final static int OUTPUT_SIZE = 1024 * 1024;
+
+    private final MerkleHellmanKnapsackCryptoProject crypto;
+    private final int maxCipherLength;
+    //bytes of input mapped at a time by this cipher
+    private final int regionSize;
+    //bytes of output gathered by this cipher before each write
+    private final int outputSize;
+
+    /**
+     * This is the constructor for the file cipher.
+     *
+     * @param crypto the key used for every block
+     */
+    public KnapsackFileCipher(MerkleHellmanKnapsackCryptoProject crypto) {
+        this(crypto, REGION_SIZE, OUTPUT_SIZE);
+    }
+
+    /**
+     * This is the constructor for a file cipher with smaller regions and
+     * output, so tests can cross their ends with small files.
+     *
+     * @param crypto the key used for every block
+     * @param regionSize the bytes of input mapped at a time
+     * @param outputSize the bytes of output gathered before each write
+     * @exception IllegalArgumentException Indicates that a region or the
+     * output cannot hold the largest frame
+     */
+    KnapsackFileCipher(MerkleHellmanKnapsackCryptoProject crypto, int regionSize, int outputSize) {
+        this.crypto = crypto;
+        this.maxCipherLength = crypto.getMaxCipherLength();
+        int maxFrameLength = KnapsackStreamCipher.FRAME_HEADER_SIZE + maxCipherLength;
+        if (regionSize < maxFrameLength || outputSize < maxFrameLength) {
+            throw new IllegalArgumentException("The region size [" + regionSize + "] or output size [" + outputSize
+                    + "] is less than the largest frame [" + maxFrameLength + "].");
+        }
+        this.regionSize = regionSize;
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * This method encrypts a file into a file of frames, replacing any file
+     * already there.
+     *
+     * @param source the plaintext file
+     * @param target the file receiving the frames
+     * @return the number of blocks written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(Path source, Path target) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        //regions hold whole blocks, so no block spans two regions
+        long region = regionSize / blockSize * blockSize;
+        byte[] block = new byte[blockSize];
+        Object event = KnapsackEvents.beginEncrypt();
+        long blocks = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = open(target)) {
+            ByteBuffer frames = ByteBuffer.allocateDirect(outputSize);
+            long size = in.size();
+            for (long position = 0; position < size; position += region) {
+                MappedByteBuffer input = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(region, size - position));
+                while (input.hasRemaining()) {
+                    int length = Math.min(blockSize, input.remaining());
+                    input.get(block, 0, length);
+                    if (frames.remaining() < KnapsackStreamCipher.FRAME_HEADER_SIZE + maxCipherLength) {
+                        flush(out, frames);
+                    }
+                    KnapsackStreamCipher.putFrame(frames, length, crypto.encryptBlock(block, 0, length));
+                    blocks++;
+                }
+            }
+            flush(out, frames);
+            KnapsackEvents.endEncrypt(event, blocks, crypto.getParameters().getKnapsackLength(), size);
+        }
+        return blocks;
+    }
+
+    /**
+     * This method decrypts a file of frames into the plaintext file,
+     * replacing any file already there.
+     *
+     * @param source the file of frames
+     * @param target the file receiving the plaintext
+     * @return the number of blocks read
+     * @throws IOException if reading or writing fails, or a frame is corrupt
+     */
+    public long decrypt(Path source, Path target) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        DecryptionContext context = crypto.getDecryptionContext();
+        DecryptionContext.Scratch scratch = context.newScratch();
+        byte[] block = new byte[blockSize];
+        Object event = KnapsackEvents.beginDecrypt();
+        long blocks = 0;
+        long bytes = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = open(target)) {
+            ByteBuffer plain = ByteBuffer.allocateDirect(outputSize);
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                MappedByteBuffer input = in.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+                //frames are parsed while whole, a frame cut by the region end starts the next region
+                int consumed = 0;
+                while (input.remaining() >= KnapsackStreamCipher.FRAME_HEADER_SIZE) {
+                    int length = input.getInt();
+                    int cipherLength = input.getInt();
+                    if (length <= 0 || length > blockSize || cipherLength <= 0 || cipherLength > maxCipherLength) {
+                        throw new IOException("The frame of block [" + blocks + "] is corrupt.");
+                    }
+                    if (input.remaining() < cipherLength) {
+                        break;
+                    }
+                    byte[] cipher = new byte[cipherLength];
+                    input.get(cipher);
+                    context.decryptBlock(new BigInteger(cipher), block, 0, scratch);
+                    if (plain.remaining() < length) {
+                        flush(out, plain);
+                    }
+                    plain.put(block, 0, length);
+                    consumed = input.position();
+                    blocks++;
+                    bytes += length;
+                }
+                if (consumed == 0) {
+                    throw new EOFException("The frame of block [" + blocks + "] is truncated.");
+                }
+                position += consumed;
+            }
+            flush(out, plain);
+        }
+        KnapsackEvents.endDecrypt(event, blocks, crypto.getParameters().getKnapsackLength(), bytes);
+        return blocks;
+    }
+
+    /**
+     * This method opens a file for writing, truncating it.
+     *
+     * @param path the file
+     * @return the channel
+     * @throws IOException if the file cannot be opened
+     */
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * This method writes the gathered bytes and empties the buffer.
+     *
+     * @param out the channel to write
+     * @param buffer the gathered bytes
+     * @throws IOException if writing fails
+     */
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        KnapsackStreamCipher.writeFully(out, buffer);
+        buffer.clear();
+    }
+}
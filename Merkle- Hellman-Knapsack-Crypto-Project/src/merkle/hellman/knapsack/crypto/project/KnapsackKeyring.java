@@ -0,0 +1,214 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class holds every version of a key, so messages stay decryptable
+ * after any number of rotations. Each key is saved with {@link KeyFile} in
+ * a directory, named by its key id, and ciphertext is written in
+ * {@link CiphertextFormat}, whose header names the key id. Decryption
+ * reads that id and uses the matching key and its decryption context.
+ *
+ * Only the current key and the most recently used old keys are kept on the
+ * heap, in a bounded least recently used map. An evicted key is loaded
+ * again from its file the next time a message of it arrives.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackKeyring {
+
+    private final Path directory;
+    //old keys in access order, at most capacity of them, guarded by itself
+    private final LinkedHashMap<Long, MerkleHellmanKnapsackCryptoProject> cache;
+    private volatile MerkleHellmanKnapsackCryptoProject current;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * This is the constructor for a keyring stored in the given directory.
+     * Keys already saved there are loaded when first needed.
+     *
+     * @param directory the directory holding the key files, created if
+     * missing
+     * @param capacity the number of old keys kept on the heap
+     * @throws IOException if the directory cannot be created
+     */
+    public KnapsackKeyring(Path directory, final int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity [" + capacity + "] is not positive.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.cache = new LinkedHashMap<Long, MerkleHellmanKnapsackCryptoProject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MerkleHellmanKnapsackCryptoProject> eldest) {
+                if (size() > capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * This method saves a key and makes it the one new messages are
+     * encrypted with. The key it replaces joins the old keys.
+     *
+     * @param key the new key, which must hold the private part
+     * @return the key id
+     * @throws IOException if the key cannot be saved
+     */
+    public long rotate(MerkleHellmanKnapsackCryptoProject key) throws IOException {
+        long id = key.getKeyId();
+        KeyFile.save(key, path(id));
+        MerkleHellmanKnapsackCryptoProject replaced;
+        synchronized (cache) {
+            replaced = current;
+            current = key;
+            cache.remove(id);
+            if (replaced != null && replaced != key) {
+                cache.put(replaced.getKeyId(), replaced);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * This method returns the key new messages are encrypted with.
+     *
+     * @return the current key, null before the first rotation
+     */
+    public MerkleHellmanKnapsackCryptoProject getCurrent() {
+        return current;
+    }
+
+    /**
+     * This method returns the key with the given id, loading it from its
+     * file when it is not on the heap.
+     *
+     * @param keyId the key id
+     * @return the key
+     * @throws IOException if the key file cannot be read
+     * @exception IllegalArgumentException Indicates that the keyring has no
+     * such key
+     */
+    public MerkleHellmanKnapsackCryptoProject get(long keyId) throws IOException {
+        MerkleHellmanKnapsackCryptoProject key = current;
+        if (key != null && key.getKeyId() == keyId) {
+            hits.incrementAndGet();
+            return key;
+        }
+        synchronized (cache) {
+            key = cache.get(keyId);
+        }
+        if (key != null) {
+            hits.incrementAndGet();
+            return key;
+        }
+        Path path = path(keyId);
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("The key id [" + Long.toHexString(keyId) + "] is not in the keyring.");
+        }
+        //the file is read outside the lock, so other keys are not held up
+        key = KeyFile.load(path);
+        loads.incrementAndGet();
+        synchronized (cache) {
+            MerkleHellmanKnapsackCryptoProject raced = cache.get(keyId);
+            if (raced != null) {
+                return raced;
+            }
+            if (current == null || current.getKeyId() != keyId) {
+                cache.put(keyId, key);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * This method encrypts bytes into a message with the current key.
+     *
+     * @param data the plaintext
+     * @param offset the position of the first plaintext byte
+     * @param length the number of plaintext bytes
+     * @param out receives the message, see
+     * {@link CiphertextFormat#getMaxEncodedLength}
+     * @return the number of blocks written
+     * @exception IllegalStateException Indicates that the keyring holds no
+     * key yet
+     */
+    public int encrypt(byte[] data, int offset, int length, ByteBuffer out) {
+        MerkleHellmanKnapsackCryptoProject key = current;
+        if (key == null) {
+            throw new IllegalStateException("The keyring holds no key yet.");
+        }
+        return CiphertextFormat.encrypt(key, data, offset, length, out);
+    }
+
+    /**
+     * This method decrypts a message of any key in the keyring.
+     *
+     * @param in the message at its position, which is moved past it
+     * @return the plaintext
+     * @throws IOException if the key of the message cannot be loaded
+     * @exception IllegalArgumentException Indicates that the message is
+     * corrupt or of a key not in the keyring
+     */
+    public byte[] decrypt(ByteBuffer in) throws IOException {
+        return CiphertextFormat.decrypt(get(CiphertextFormat.readKeyId(in)), in);
+    }
+
+    /**
+     * This method returns the number of old keys on the heap.
+     *
+     * @return the cached key count
+     */
+    public int getCachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * This method returns the number of key lookups answered from the heap.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * This method returns the number of keys loaded from their files.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * This method returns the number of old keys dropped from the heap.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * This method returns the file of a key.
+     *
+     * @param keyId the key id
+     * @return the path in the keyring directory
+     */
+    private Path path(long keyId) {
+        return directory.resolve(String.format("%016x.key", keyId));
+    }
+}
@@ -0,0 +1,215 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class drives a {@link KnapsackServer} to measure its throughput and
+ * tail latency. Every connection runs on its own thread and keeps a fixed
+ * number of requests in flight, sending the next one as each answer
+ * arrives. Requests alternate between encrypting a random payload and
+ * decrypting a ciphertext fetched at the start. Run it with
+ * java -cp build/classes merkle.hellman.knapsack.crypto.project.KnapsackLoadClient
+ * port [connections] [depth] [requests] [payload-size]
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackLoadClient {
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int depth;
+    private final int requests;
+    private final int payloadSize;
+
+    /**
+     * This is the constructor for a load run.
+     *
+     * @param address the service address
+     * @param connections the number of connections, each on its own thread
+     * @param depth the number of requests each connection keeps in flight
+     * @param requests the number of requests each connection sends
+     * @param payloadSize the number of plaintext bytes per encrypt request
+     */
+    public KnapsackLoadClient(InetSocketAddress address, int connections, int depth, int requests, int payloadSize) {
+        if (connections <= 0 || depth <= 0 || requests <= 0 || payloadSize <= 0) {
+            throw new IllegalArgumentException("The connections, depth, requests and payload size must be positive.");
+        }
+        this.address = address;
+        this.connections = connections;
+        this.depth = depth;
+        this.requests = requests;
+        this.payloadSize = payloadSize;
+    }
+
+    /**
+     * This method is the driver of a load run against a local service.
+     *
+     * @param args the port, then optionally the connections, depth,
+     * requests per connection and payload size
+     * @throws Exception if the run fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("usage: port [connections] [depth] [requests] [payload-size]");
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", Integer.parseInt(args[0]));
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        int payloadSize = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        System.out.println(new KnapsackLoadClient(address, connections, depth, requests, payloadSize).run());
+    }
+
+    /**
+     * This method runs every connection to completion.
+     *
+     * @return a one line report of throughput and latency percentiles
+     * @throws Exception if a connection fails or the service answers with an
+     * error
+     */
+    public String run() throws Exception {
+        final long[][] latencies = new long[connections][];
+        final Exception[] failures = new Exception[connections];
+        Thread[] threads = new Thread[connections];
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latencies[index] = drive(index);
+                    } catch (Exception e) {
+                        failures[index] = e;
+                    }
+                }
+            }, "knapsack-load-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        long[] all = new long[connections * requests];
+        for (int i = 0; i < connections; i++) {
+            System.arraycopy(latencies[i], 0, all, i * requests, requests);
+        }
+        Arrays.sort(all);
+        return String.format("%d connections x %d deep, %d requests in %.2f s: %.0f req/s, latency us p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+                connections, depth, all.length, seconds, all.length / seconds,
+                percentile(all, 0.5) / 1e3, percentile(all, 0.99) / 1e3, percentile(all, 0.999) / 1e3, all[all.length - 1] / 1e3);
+    }
+
+    /**
+     * This method sends the requests of one connection, keeping depth of
+     * them in flight.
+     *
+     * @param index the connection number, seeding its payloads
+     * @return the latency of every request in nanoseconds
+     * @throws IOException if the connection fails or a request is refused
+     */
+    private long[] drive(int index) throws IOException {
+        Random random = new Random(index);
+        byte[] payload = new byte[payloadSize];
+        random.nextBytes(payload);
+        long[] sent = new long[requests];
+        long[] latencies = new long[requests];
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.socket().setTcpNoDelay(true);
+            ByteBuffer header = ByteBuffer.allocate(KnapsackServer.HEADER_SIZE);
+            ByteBuffer out = ByteBuffer.allocate(KnapsackServer.HEADER_SIZE + KnapsackServer.MAX_PAYLOAD);
+            //the ciphertext the decrypt requests send back
+            send(channel, out, KnapsackServer.OP_ENCRYPT, -1, ByteBuffer.wrap(payload));
+            ByteBuffer ciphertext = ByteBuffer.wrap(receive(channel, header, -1));
+            int next = 0;
+            for (; next < Math.min(depth, requests); next++) {
+                sent[next] = System.nanoTime();
+                send(channel, out, next % 2 == 0 ? KnapsackServer.OP_ENCRYPT : KnapsackServer.OP_DECRYPT, next,
+                        next % 2 == 0 ? ByteBuffer.wrap(payload) : ciphertext.duplicate());
+            }
+            for (int done = 0; done < requests; done++) {
+                receive(channel, header, done);
+                latencies[done] = System.nanoTime() - sent[done];
+                if (next < requests) {
+                    sent[next] = System.nanoTime();
+                    send(channel, out, next % 2 == 0 ? KnapsackServer.OP_ENCRYPT : KnapsackServer.OP_DECRYPT, next,
+                            next % 2 == 0 ? ByteBuffer.wrap(payload) : ciphertext.duplicate());
+                    next++;
+                }
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * This method writes one request.
+     *
+     * @param channel the connection
+     * @param out a buffer for the request
+     * @param op the operation
+     * @param id the request id
+     * @param payload the payload
+     * @throws IOException if writing fails
+     */
+    private static void send(SocketChannel channel, ByteBuffer out, byte op, int id, ByteBuffer payload) throws IOException {
+        out.clear();
+        out.put(op).putInt(id).putInt(payload.remaining()).put(payload);
+        out.flip();
+        KnapsackStreamCipher.writeFully(channel, out);
+    }
+
+    /**
+     * This method reads one answer and checks it is the expected one.
+     *
+     * @param channel the connection
+     * @param header a buffer for the answer header
+     * @param id the expected request id
+     * @return the payload
+     * @throws IOException if reading fails or the answer is an error
+     */
+    private static byte[] receive(SocketChannel channel, ByteBuffer header, int id) throws IOException {
+        if (KnapsackStreamCipher.readFully(channel, header) < KnapsackServer.HEADER_SIZE) {
+            throw new EOFException("The service closed the connection.");
+        }
+        header.flip();
+        byte status = header.get();
+        int answered = header.getInt();
+        int length = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (KnapsackStreamCipher.readFully(channel, payload) < length) {
+            throw new EOFException("The answer to request [" + answered + "] is truncated.");
+        }
+        if (status != KnapsackServer.STATUS_OK) {
+            throw new IOException("The request [" + answered + "] failed: " + new String(payload.array(), StandardCharsets.UTF_8));
+        }
+        if (answered != id) {
+            throw new IOException("The answer to request [" + answered + "] came in place of [" + id + "].");
+        }
+        return payload.array();
+    }
+
+    /**
+     * This method reads a percentile from sorted samples.
+     *
+     * @param sorted the samples in increasing order
+     * @param fraction the percentile as a fraction
+     * @return the sample at that rank
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+}
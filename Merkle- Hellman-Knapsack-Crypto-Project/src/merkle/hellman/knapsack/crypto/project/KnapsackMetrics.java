@@ -0,0 +1,201 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects process wide metrics of every Merkel hellman knapsack
+ * key: key generations, and encrypted and decrypted blocks with their bytes
+ * and latencies. Recording is always on and lock free, made of
+ * {@link LongAdder} counters and {@link LatencyHistogram}s, so many threads
+ * encrypting at once do not contend on it. The metrics are exposed over JMX
+ * once {@link #register()} is called, under {@link #OBJECT_NAME}.
+ *
+ * @author Anshu Anand
+ */
+public final class KnapsackMetrics implements KnapsackMetricsMBean {
+
+    //name the metrics are registered under
+    public final static String OBJECT_NAME = "merkle.hellman.knapsack.crypto.project:type=KnapsackMetrics";
+
+    private final static KnapsackMetrics INSTANCE = new KnapsackMetrics();
+
+    private final LatencyHistogram keygen = new LatencyHistogram();
+    private final LatencyHistogram encrypt = new LatencyHistogram();
+    private final LatencyHistogram decrypt = new LatencyHistogram();
+    private final LongAdder bytesEncrypted = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+
+    private KnapsackMetrics() {
+    }
+
+    /**
+     * This method returns the metrics of the process.
+     *
+     * @return the shared metrics
+     */
+    public static KnapsackMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * This method registers the metrics with the platform MBean server,
+     * unless they are registered already.
+     *
+     * @exception IllegalStateException Indicates that JMX refused the
+     * registration
+     */
+    public static synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("The knapsack metrics could not be registered.", e);
+        }
+    }
+
+    /**
+     * This method records one key generation.
+     *
+     * @param nanos the time it took
+     */
+    void recordKeygen(long nanos) {
+        keygen.record(nanos);
+    }
+
+    /**
+     * This method records one encrypted block.
+     *
+     * @param nanos the time it took
+     * @param bytes the plaintext bytes in the block
+     */
+    void recordEncrypt(long nanos, int bytes) {
+        encrypt.record(nanos);
+        bytesEncrypted.add(bytes);
+    }
+
+    /**
+     * This method records one decrypted block.
+     *
+     * @param nanos the time it took
+     * @param bytes the plaintext bytes written
+     */
+    void recordDecrypt(long nanos, int bytes) {
+        decrypt.record(nanos);
+        bytesDecrypted.add(bytes);
+    }
+
+    /**
+     * This method returns the key generation latencies.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getKeygenHistogram() {
+        return keygen;
+    }
+
+    /**
+     * This method returns the block encryption latencies.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getEncryptHistogram() {
+        return encrypt;
+    }
+
+    /**
+     * This method returns the block decryption latencies.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getDecryptHistogram() {
+        return decrypt;
+    }
+
+    @Override
+    public long getKeygenCount() {
+        return keygen.getCount();
+    }
+
+    @Override
+    public double getKeygenMeanMillis() {
+        return keygen.getMeanNanos() / 1e6;
+    }
+
+    @Override
+    public double getKeygenP99Millis() {
+        return keygen.getPercentileNanos(0.99) / 1e6;
+    }
+
+    @Override
+    public long getEncryptCount() {
+        return encrypt.getCount();
+    }
+
+    @Override
+    public long getBytesEncrypted() {
+        return bytesEncrypted.sum();
+    }
+
+    @Override
+    public double getEncryptMeanMicros() {
+        return encrypt.getMeanNanos() / 1e3;
+    }
+
+    @Override
+    public double getEncryptP50Micros() {
+        return encrypt.getPercentileNanos(0.5) / 1e3;
+    }
+
+    @Override
+    public double getEncryptP99Micros() {
+        return encrypt.getPercentileNanos(0.99) / 1e3;
+    }
+
+    @Override
+    public long getDecryptCount() {
+        return decrypt.getCount();
+    }
+
+    @Override
+    public long getBytesDecrypted() {
+        return bytesDecrypted.sum();
+    }
+
+    @Override
+    public double getDecryptMeanMicros() {
+        return decrypt.getMeanNanos() / 1e3;
+    }
+
+    @Override
+    public double getDecryptP50Micros() {
+        return decrypt.getPercentileNanos(0.5) / 1e3;
+    }
+
+    @Override
+    public double getDecryptP99Micros() {
+        return decrypt.getPercentileNanos(0.99) / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        keygen.reset();
+        encrypt.reset();
+        decrypt.reset();
+        bytesEncrypted.reset();
+        bytesDecrypted.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "KnapsackMetrics[keygen=" + getKeygenCount()
+                + ", encrypt=" + getEncryptCount() + " blocks/" + getBytesEncrypted() + " bytes"
+                + ", decrypt=" + getDecryptCount() + " blocks/" + getBytesDecrypted() + " bytes]";
+    }
+}
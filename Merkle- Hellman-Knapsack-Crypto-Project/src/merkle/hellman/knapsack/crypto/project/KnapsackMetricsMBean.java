@@ -0,0 +1,43 @@
+package merkle.hellman.knapsack.crypto.project;
+
+/**
+ * This interface is the JMX view of {@link KnapsackMetrics}: counts, bytes
+ * and latencies of key generation, encryption and decryption. Encryption and
+ * decryption are counted per block, latencies are in microseconds except
+ * key generation, which is in milliseconds.
+ *
+ * @author Anshu Anand
+ */
+public interface KnapsackMetricsMBean {
+
+    long getKeygenCount();
+
+    double getKeygenMeanMillis();
+
+    double getKeygenP99Millis();
+
+    long getEncryptCount();
+
+    long getBytesEncrypted();
+
+    double getEncryptMeanMicros();
+
+    double getEncryptP50Micros();
+
+    double getEncryptP99Micros();
+
+    long getDecryptCount();
+
+    long getBytesDecrypted();
+
+    double getDecryptMeanMicros();
+
+    double getDecryptP50Micros();
+
+    double getDecryptP99Micros();
+
+    /**
+     * This method clears every counter and histogram.
+     */
+    void reset();
+}
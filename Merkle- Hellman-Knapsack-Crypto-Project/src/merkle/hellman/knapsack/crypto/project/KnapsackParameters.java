@@ -0,0 +1,180 @@
+package merkle.hellman.knapsack.crypto.project;
+
+/**
+ * This class holds the sizes used to generate a Merkel hellman knapsack key.
+ * The knapsack length is the number of elements in w and b, and fixes the
+ * block size: each element covers one plaintext bit, so a block holds
+ * knapsack length / 8 bytes. Instances are built with {@link Builder}.
+ *
+ * @author Anshu Anand
+ */
+public final class KnapsackParameters {
+
+    //this holds the default numbers of nodes
+    public final static int DEFAULT_KNAPSACK_LENGTH = 640;
+    //this holds the default bound of the random value added to each element
+    public final static int DEFAULT_RANDOM_BOUND = 10;
+    //parameters matching the original hard-coded key
+    public final static KnapsackParameters DEFAULT = new Builder().build();
+
+    private final int knapsackLength;
+    private final int randomBound;
+    private final boolean precomputedEncryption;
+    private final ArithmeticBackend arithmetic;
+
+    private KnapsackParameters(Builder builder) {
+        knapsackLength = builder.knapsackLength;
+        randomBound = builder.randomBound;
+        precomputedEncryption = builder.precomputedEncryption;
+        arithmetic = builder.arithmetic;
+    }
+
+    /**
+     * This method returns the number of elements in the knapsack.
+     *
+     * @return the knapsack length
+     */
+    public int getKnapsackLength() {
+        return knapsackLength;
+    }
+
+    /**
+     * This method returns the exclusive bound of the random value added to
+     * each element of the superincreasing sequence.
+     *
+     * @return the random bound
+     */
+    public int getRandomBound() {
+        return randomBound;
+    }
+
+    /**
+     * This method tells if encryption uses a precomputed
+     * {@link EncryptionTable} of the public key.
+     *
+     * @return true when the table is built with the key
+     */
+    public boolean isPrecomputedEncryption() {
+        return precomputedEncryption;
+    }
+
+    /**
+     * This method returns the arithmetic decryption multiplies modulo q
+     * with.
+     *
+     * @return the arithmetic backend
+     */
+    public ArithmeticBackend getArithmetic() {
+        return arithmetic;
+    }
+
+    /**
+     * This method returns the number of plaintext bytes covered by one key.
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return knapsackLength / 8;
+    }
+
+    @Override
+    public String toString() {
+        return "KnapsackParameters[knapsackLength=" + knapsackLength
+                + ", randomBound=" + randomBound
+                + ", precomputedEncryption=" + precomputedEncryption
+                + ", arithmetic=" + arithmetic + "]";
+    }
+
+    /**
+     * This class builds {@link KnapsackParameters}, starting from the
+     * default sizes.
+     */
+    public static final class Builder {
+
+        private int knapsackLength = DEFAULT_KNAPSACK_LENGTH;
+        private int randomBound = DEFAULT_RANDOM_BOUND;
+        private boolean precomputedEncryption = false;
+        private ArithmeticBackend arithmetic = ArithmeticBackend.BIG_INTEGER;
+
+        /**
+         * This method sets the number of elements in the knapsack.
+         *
+         * @param knapsackLength a positive multiple of 8
+         * @return this builder
+         */
+        public Builder knapsackLength(int knapsackLength) {
+            if (knapsackLength <= 0 || knapsackLength % 8 != 0) {
+                throw new IllegalArgumentException("The knapsack length [" + knapsackLength + "] is not a positive multiple of 8.");
+            }
+            this.knapsackLength = knapsackLength;
+            return this;
+        }
+
+        /**
+         * This method sets the number of plaintext bytes covered by one key,
+         * which is the knapsack length divided by 8.
+         *
+         * @param blockSize a positive number of bytes
+         * @return this builder
+         */
+        public Builder blockSize(int blockSize) {
+            if (blockSize <= 0 || blockSize > Integer.MAX_VALUE / 8) {
+                throw new IllegalArgumentException("The block size [" + blockSize + "] is out of range.");
+            }
+            return knapsackLength(blockSize * 8);
+        }
+
+        /**
+         * This method sets the exclusive bound of the random value added to
+         * each element of the superincreasing sequence.
+         *
+         * @param randomBound a positive bound
+         * @return this builder
+         */
+        public Builder randomBound(int randomBound) {
+            if (randomBound <= 0) {
+                throw new IllegalArgumentException("The random bound [" + randomBound + "] is not positive.");
+            }
+            this.randomBound = randomBound;
+            return this;
+        }
+
+        /**
+         * This method sets whether encryption uses a table of 256 precomputed
+         * sums for each byte of the block. The table makes encryption one
+         * addition per byte, at the cost of memory reported by
+         * {@link MerkleHellmanKnapsackCryptoProject#getEncryptionTableFootprint()}.
+         *
+         * @param precomputedEncryption true to build the table with the key
+         * @return this builder
+         */
+        public Builder precomputedEncryption(boolean precomputedEncryption) {
+            this.precomputedEncryption = precomputedEncryption;
+            return this;
+        }
+
+        /**
+         * This method sets the arithmetic decryption multiplies modulo q
+         * with.
+         *
+         * @param arithmetic the arithmetic backend
+         * @return this builder
+         */
+        public Builder arithmetic(ArithmeticBackend arithmetic) {
+            if (arithmetic == null) {
+                throw new IllegalArgumentException("The arithmetic backend is null.");
+            }
+            this.arithmetic = arithmetic;
+            return this;
+        }
+
+        /**
+         * This method creates the parameters.
+         *
+         * @return the parameters set on this builder
+         */
+        public KnapsackParameters build() {
+            return new KnapsackParameters(this);
+        }
+    }
+}
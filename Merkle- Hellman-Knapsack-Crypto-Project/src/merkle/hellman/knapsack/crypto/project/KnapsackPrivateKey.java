@@ -0,0 +1,164 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * This class is the private part of a Merkel hellman knapsack key: w, q, r
+ * and the decryption context built from them, beside the public key they
+ * derive. It never changes once built and can be shared by any number of
+ * threads.
+ *
+ * @author Anshu Anand
+ */
+public final class KnapsackPrivateKey {
+
+    //the public key b = w * r mod q
+    private final KnapsackPublicKey publicKey;
+    //the superincreasing sequence, each element as wide as a remainder mod q
+    private final KnapsackElements elements;
+    private final BigInteger q;
+    private final BigInteger r;
+    //r inverse mod q and w, built once for every decryption
+    private final DecryptionContext decryptionContext;
+
+    /**
+     * Creates a private key from its parts.
+     *
+     * @param publicKey the public key derived from w, q and r
+     * @param wElements the superincreasing sequence
+     * @param q the modulus
+     * @param r the multiplier
+     */
+    KnapsackPrivateKey(KnapsackPublicKey publicKey, BigInteger[] wElements, BigInteger q, BigInteger r) {
+        int n = publicKey.getParameters().getKnapsackLength();
+        if (wElements.length != n) {
+            throw new IllegalArgumentException("The key elements do not match the knapsack length [" + n + "].");
+        }
+        this.publicKey = publicKey;
+        this.elements = new KnapsackElements(wElements, Limbs.count(q));
+        this.q = q;
+        this.r = r;
+        this.decryptionContext = newDecryptionContext();
+    }
+
+    /**
+     * This method returns the public key of this key pair.
+     *
+     * @return the public key
+     */
+    public KnapsackPublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * This method returns the superincreasing sequence w as new BigIntegers,
+     * for the rare paths that need them, such as saving the key.
+     *
+     * @return the elements of w
+     */
+    BigInteger[] getW() {
+        return elements.toArray();
+    }
+
+    /**
+     * This method returns the number of heap bytes w takes. The decryption
+     * context reads the same storage, so it is counted once.
+     *
+     * @return the footprint of the element storage in bytes
+     */
+    public long getFootprint() {
+        return elements.getFootprint();
+    }
+
+    /**
+     * This method returns the modulus q.
+     *
+     * @return q
+     */
+    BigInteger getQ() {
+        return q;
+    }
+
+    /**
+     * This method returns the multiplier r.
+     *
+     * @return r
+     */
+    BigInteger getR() {
+        return r;
+    }
+
+    /**
+     * This method returns the decryption context built with this key.
+     *
+     * @return the context holding r inverse and w
+     */
+    public DecryptionContext getDecryptionContext() {
+        return decryptionContext;
+    }
+
+    /**
+     * This method builds a new decryption context for this key, computing r
+     * inverse mod q again.
+     *
+     * @return a new context
+     */
+    DecryptionContext newDecryptionContext() {
+        return new DecryptionContext(elements, q, r, publicKey.getParameters().getArithmetic());
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: decrypts the encrypted number into block size bytes,
+     * including any trailing zero bytes, so binary data survives the round
+     * trip.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param block the array receiving the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written, which is the block size
+     */
+    public int decryptBlock(BigInteger big, byte[] block, int offset) {
+        return decryptionContext.decryptBlock(big, block, offset);
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: decrypts
+     * the encrypted number and puts the first length bytes of the block into
+     * out, zero bytes included, so binary data survives the round trip.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param length the number of plaintext bytes the block holds
+     * @param out receives the bytes at its position, heap or direct
+     * @return the number of bytes put. Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public int decrypt(BigInteger big, int length, ByteBuffer out) {
+        return decrypt(big, length, out, decryptionContext.newScratch());
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: decrypts
+     * the encrypted number and puts the first length bytes of the block into
+     * out, working in the given scratch, so a thread decrypting many blocks
+     * allocates nothing per block.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param length the number of plaintext bytes the block holds
+     * @param out receives the bytes at its position, heap or direct
+     * @param scratch buffers from {@link DecryptionContext#newScratch()}, not
+     * shared between threads
+     * @return the number of bytes put. Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public int decrypt(BigInteger big, int length, ByteBuffer out, DecryptionContext.Scratch scratch) {
+        int blockSize = publicKey.getBlockSize();
+        if (length > blockSize) {
+            throw new IllegalArgumentException("The length [" + length + "] is greater than the block size [" + blockSize + "].");
+        }
+        return decryptionContext.decrypt(big, length, out, scratch);
+    }
+}
@@ -0,0 +1,309 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class is the public part of a Merkel hellman knapsack key: b and
+ * what encryption derives from it. It holds no w, q or r and never builds a
+ * decryption context, so an encrypt only process loads just this, see
+ * {@link KeyFile#loadPublicKey(java.nio.file.Path)}. It never changes once
+ * built and can be shared by any number of threads.
+ *
+ * @author Anshu Anand
+ */
+public final class KnapsackPublicKey {
+
+    //sizes the key was generated with
+    private final KnapsackParameters parameters;
+    //the elements of b, each wide enough for the sum of all of b
+    private final KnapsackElements elements;
+    //sums the elements selected by a block, reading elements in place
+    private final SubsetSumEncoder encoder;
+    //precomputed window sums of b, null unless precomputed encryption is on
+    private final EncryptionTable encryptionTable;
+    //bit length of the largest element of b
+    private final int maxElementBits;
+    //hash of b, computed on first use
+    private volatile Long keyId;
+
+    /**
+     * Creates a public key from the elements of b.
+     *
+     * @param parameters the parameters the key was generated with
+     * @param bElements the public key
+     */
+    KnapsackPublicKey(KnapsackParameters parameters, BigInteger[] bElements) {
+        if (bElements.length != parameters.getKnapsackLength()) {
+            throw new IllegalArgumentException("The key elements do not match the knapsack length [" + parameters.getKnapsackLength() + "].");
+        }
+        this.parameters = parameters;
+        int bits = 0;
+        for (BigInteger element : bElements) {
+            bits = Math.max(bits, element.bitLength());
+        }
+        this.maxElementBits = bits;
+        this.elements = new KnapsackElements(bElements, (getMaxSumBits() + 31) / 32);
+        this.encoder = new SubsetSumEncoder(elements);
+        this.encryptionTable = parameters.isPrecomputedEncryption() ? new EncryptionTable(bElements) : null;
+    }
+
+    /**
+     * This method returns the sizes this key was generated with.
+     *
+     * @return the key parameters
+     */
+    public KnapsackParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * This method returns the number of plaintext bytes one encryption call
+     * covers.
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return parameters.getBlockSize();
+    }
+
+    /**
+     * This method returns a 64 bit id of the key: the first 8 bytes of the
+     * SHA-256 hash of b. A key pair and its public key have the same id, so
+     * ciphertext can name the key that decrypts it.
+     *
+     * @return the key id
+     */
+    public long getKeyId() {
+        Long id = keyId;
+        if (id == null) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                //every Java platform provides SHA-256
+                throw new IllegalStateException(e);
+            }
+            for (int i = 0; i < elements.size(); i++) {
+                byte[] bytes = elements.get(i).toByteArray();
+                //the length keeps element boundaries apart
+                digest.update((byte) (bytes.length >>> 24));
+                digest.update((byte) (bytes.length >>> 16));
+                digest.update((byte) (bytes.length >>> 8));
+                digest.update((byte) bytes.length);
+                digest.update(bytes);
+            }
+            byte[] hash = digest.digest();
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (hash[i] & 0xff);
+            }
+            id = value;
+            keyId = id;
+        }
+        return id;
+    }
+
+    /**
+     * This method returns the public key b as new BigIntegers, for the rare
+     * paths that need them, such as saving the key.
+     *
+     * @return the elements of b
+     */
+    BigInteger[] getB() {
+        return elements.toArray();
+    }
+
+    /**
+     * This method returns the number of heap bytes b takes.
+     *
+     * @return the footprint of the element storage in bytes
+     */
+    public long getFootprint() {
+        return elements.getFootprint();
+    }
+
+    /**
+     * This method returns the bit length of the largest element of b.
+     *
+     * @return the largest element bit length
+     */
+    int getMaxElementBits() {
+        return maxElementBits;
+    }
+
+    /**
+     * This method returns the estimated heap taken by the precomputed
+     * encryption table.
+     *
+     * @return the footprint in bytes, 0 when precomputed encryption is off
+     */
+    public long getEncryptionTableFootprint() {
+        return encryptionTable == null ? 0 : encryptionTable.getFootprint();
+    }
+
+    /**
+     * This method returns the largest number of bytes an encrypted block can
+     * take as BigInteger.toByteArray(): a sum of N elements of b, plus the
+     * sign byte.
+     *
+     * @return the largest ciphertext length in bytes
+     */
+    public int getMaxCipherLength() {
+        return getMaxSumBits() / 8 + 1;
+    }
+
+    /**
+     * This method returns the bit length of the largest possible sum of b.
+     *
+     * @return a bound on the bits of an encrypted number
+     */
+    private int getMaxSumBits() {
+        return maxElementBits + 32 - Integer.numberOfLeadingZeros(parameters.getKnapsackLength());
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: writes the UTF-8 bytes of the input without
+     * allocating. A surrogate without its pair is written as '?', as
+     * String.getBytes does.
+     *
+     * @param input is the text that user inputs.
+     * @param block the buffer receiving the bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written. Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that the UTF-8 bytes of
+     * input are more than the block size
+     */
+    public int toBytes(CharSequence input, byte[] block, int offset) {
+        int blockSize = getBlockSize();
+        int position = offset;
+        for (int i = 0; i < input.length(); i++) {
+            int c = input.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < input.length() && Character.isLowSurrogate(input.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, input.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                c = '?';
+            }
+            int size = c < 0x80 ? 1 : c < 0x800 ? 2 : c < 0x10000 ? 3 : 4;
+            if (position - offset + size > blockSize) {
+                throw new IllegalArgumentException("The input of [" + input.length() + "] characters is greater than the block size [" + blockSize + "] in UTF-8.");
+            }
+            if (size == 1) {
+                block[position++] = (byte) c;
+                continue;
+            }
+            //lead byte, then six bits per continuation byte
+            block[position++] = (byte) ((0xf00 >>> size) | (c >>> (6 * (size - 1))));
+            for (int shift = 6 * (size - 2); shift >= 0; shift -= 6) {
+                block[position++] = (byte) (0x80 | ((c >>> shift) & 0x3f));
+            }
+        }
+        return position - offset;
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: encrypts
+     * the bytes as one block, most significant bit of each byte first.
+     *
+     * @param block the array holding the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @param length the number of bytes to encrypt
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public BigInteger encryptBlock(byte[] block, int offset, int length) {
+        if (length > getBlockSize()) {
+            throw new IllegalArgumentException("The length [" + length + "] is greater than the block size [" + getBlockSize() + "].");
+        }
+        long start = System.nanoTime();
+        BigInteger encryptedNum;
+        if (encryptionTable == null) {
+            encryptedNum = encoder.encode(block, offset, length, encoder.newAccumulator());
+        } else {
+            encryptedNum = BigInteger.ZERO;
+            for (int i = 0; i < length; i++) {
+                encryptedNum = encryptWindow(encryptedNum, i, block[offset + i]);
+            }
+        }
+        KnapsackMetrics.getInstance().recordEncrypt(System.nanoTime() - start, length);
+        return encryptedNum;
+    }
+
+    /**
+     * precondition: the remaining bytes of in are at most the block size.
+     * postcondition: encrypts them as one block, reading them where they lie,
+     * so a direct buffer is never copied onto the heap. The position of in
+     * is moved to its limit.
+     *
+     * @param in the plaintext bytes between position and limit
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that more bytes remain
+     * than the block size
+     */
+    public BigInteger encrypt(ByteBuffer in) {
+        int length = in.remaining();
+        BigInteger encrypted = encryptBlock(in, in.position(), length);
+        in.position(in.limit());
+        return encrypted;
+    }
+
+    /**
+     * This method encrypts bytes of a buffer as one block, reading them by
+     * absolute index, so neither the position nor the limit moves.
+     *
+     * @param buffer the buffer holding the plaintext bytes, heap or direct
+     * @param index the index of the first byte in buffer
+     * @param length the number of bytes to encrypt
+     * @return the encrypted number
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    BigInteger encryptBlock(ByteBuffer buffer, int index, int length) {
+        if (buffer.hasArray()) {
+            return encryptBlock(buffer.array(), buffer.arrayOffset() + index, length);
+        }
+        if (length > getBlockSize()) {
+            throw new IllegalArgumentException("The length [" + length + "] is greater than the block size [" + getBlockSize() + "].");
+        }
+        long start = System.nanoTime();
+        BigInteger encryptedNum;
+        if (encryptionTable == null) {
+            encryptedNum = encoder.encode(buffer, index, length, encoder.newAccumulator());
+        } else {
+            encryptedNum = BigInteger.ZERO;
+            for (int i = 0; i < length; i++) {
+                encryptedNum = encryptWindow(encryptedNum, i, buffer.get(index + i));
+            }
+        }
+        KnapsackMetrics.getInstance().recordEncrypt(System.nanoTime() - start, length);
+        return encryptedNum;
+    }
+
+    /**
+     * This method returns the encoder batch encryption uses, or null when
+     * the precomputed table already turns a block into one addition per
+     * byte.
+     *
+     * @return the encoder of b, or null
+     */
+    SubsetSumEncoder getBatchEncoder() {
+        return encryptionTable == null ? encoder : null;
+    }
+
+    /**
+     * This method adds the precomputed sum of the elements of b selected by
+     * one plaintext byte.
+     *
+     * @param sum the encrypted number so far
+     * @param window the position of the byte in the block
+     * @param value the byte
+     * @return the encrypted number including this byte
+     */
+    private BigInteger encryptWindow(BigInteger sum, int window, byte value) {
+        return value == 0 ? sum : sum.add(encryptionTable.sum(window, value));
+    }
+}
@@ -0,0 +1,324 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * This class is a long running encryption service holding one key. It
+ * accepts TCP connections, by default on the loopback address, and serves
+ * them all from one thread with a non blocking selector loop. Requests and
+ * responses are frames:
+ *
+ * <pre>
+ * request:  byte op (1 encrypt, 2 decrypt), int request id, int length, payload
+ * response: byte status (0 ok, 1 error), int request id, int length, payload
+ * </pre>
+ *
+ * An encrypt payload is plaintext and its response a {@link CiphertextFormat}
+ * message, a decrypt payload is such a message and its response the
+ * plaintext. An error response carries the message in UTF-8. A client may
+ * send any number of requests without waiting, they are answered in order.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackServer implements Closeable {
+
+    public final static byte OP_ENCRYPT = 1;
+    public final static byte OP_DECRYPT = 2;
+    public final static byte STATUS_OK = 0;
+    public final static byte STATUS_ERROR = 1;
+    //bytes before the payload of a request or a response
+    public final static int HEADER_SIZE = 9;
+    //largest payload a request may carry
+    public final static int MAX_PAYLOAD = 1024 * 1024;
+
+    //initial size of each connection's buffers
+    private final static int BUFFER_SIZE = 64 * 1024;
+    //unwritten bytes above which a connection stops being read
+    private final static int MAX_PENDING_OUTPUT = 4 * 1024 * 1024;
+
+    private final MerkleHellmanKnapsackCryptoProject crypto;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    /**
+     * This is the constructor for a service on a free loopback port.
+     *
+     * @param crypto the key used for every request
+     * @throws IOException if the socket cannot be bound
+     */
+    public KnapsackServer(MerkleHellmanKnapsackCryptoProject crypto) throws IOException {
+        this(crypto, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    /**
+     * This is the constructor for a service on the given address.
+     *
+     * @param crypto the key used for every request
+     * @param address the address to listen on, port 0 for a free port
+     * @throws IOException if the socket cannot be bound
+     */
+    public KnapsackServer(MerkleHellmanKnapsackCryptoProject crypto, InetSocketAddress address) throws IOException {
+        this.crypto = crypto;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * This method returns the port the service listens on.
+     *
+     * @return the local port
+     * @throws IOException if the socket is closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * This method serves connections on the calling thread until
+     * {@link #close()} is called.
+     *
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            //the listening socket stays open, such as when file descriptors run out
+                            System.err.println("Accepting a connection failed: " + e.getMessage());
+                        }
+                        continue;
+                    }
+                    try {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write(key);
+                        }
+                    } catch (IOException e) {
+                        //one broken connection does not stop the service
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * This method stops the service loop, which closes every connection.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * This method accepts a waiting connection.
+     *
+     * @throws IOException if accepting fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    /**
+     * This class holds the buffers of one connection. Requests are taken
+     * from the input buffer as soon as they are whole, and their responses
+     * appended to the output buffer, which is written as far as the socket
+     * accepts.
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        //kept in read mode, holding the bytes not yet written
+        private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            output.flip();
+        }
+
+        /**
+         * This method reads what the socket has, answers every whole request
+         * and starts writing the answers.
+         *
+         * @param key the selection key of the connection
+         * @throws IOException if the socket fails or the peer sends a
+         * corrupt frame
+         */
+        void read(SelectionKey key) throws IOException {
+            if (channel.read(input) < 0) {
+                throw new IOException("The peer closed the connection.");
+            }
+            input.flip();
+            ByteBuffer larger = null;
+            while (input.remaining() >= HEADER_SIZE) {
+                int start = input.position();
+                byte op = input.get(start);
+                int id = input.getInt(start + 1);
+                int length = input.getInt(start + 5);
+                if (length < 0 || length > MAX_PAYLOAD) {
+                    throw new IOException("The request length [" + length + "] is out of range.");
+                }
+                if (input.remaining() < HEADER_SIZE + length) {
+                    if (input.capacity() < HEADER_SIZE + length) {
+                        larger = ByteBuffer.allocate(HEADER_SIZE + length);
+                    }
+                    break;
+                }
+                handle(op, id, start + HEADER_SIZE, length);
+                input.position(start + HEADER_SIZE + length);
+            }
+            if (larger != null) {
+                larger.put(input);
+                input = larger;
+            } else {
+                input.compact();
+            }
+            write(key);
+        }
+
+        /**
+         * This method answers one request.
+         *
+         * @param op the operation
+         * @param id the request id
+         * @param offset the position of the payload in the input buffer
+         * @param length the payload length
+         */
+        private void handle(byte op, int id, int offset, int length) {
+            //position of the response header once output is in write mode
+            int header = -1;
+            try {
+                if (op == OP_ENCRYPT) {
+                    int limit = (int) CiphertextFormat.getMaxEncodedLength(crypto, length);
+                    header = begin(limit);
+                    //the payload is encrypted where it lies in the input buffer
+                    CiphertextFormat.encrypt(crypto, input.array(), input.arrayOffset() + offset, length, output);
+                    end(header, STATUS_OK, id);
+                } else if (op == OP_DECRYPT) {
+                    ByteBuffer message = input.duplicate();
+                    message.limit(offset + length).position(offset);
+                    byte[] plain = CiphertextFormat.decrypt(crypto, message);
+                    header = begin(plain.length);
+                    output.put(plain);
+                    end(header, STATUS_OK, id);
+                } else {
+                    throw new IllegalArgumentException("The operation [" + op + "] is not supported.");
+                }
+            } catch (RuntimeException e) {
+                byte[] text = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                if (header < 0) {
+                    header = begin(text.length);
+                } else {
+                    //a half written response is overwritten, the replies before it are kept
+                    reserve(header, text.length);
+                }
+                output.put(text);
+                end(header, STATUS_ERROR, id);
+            }
+        }
+
+        /**
+         * This method makes room for a response of at most the given
+         * payload length and skips its header, switching the output buffer
+         * to write mode.
+         *
+         * @param payload the largest payload length
+         * @return the position of the response header
+         */
+        private int begin(int payload) {
+            output.compact();
+            int header = output.position();
+            reserve(header, payload);
+            return header;
+        }
+
+        /**
+         * This method makes room, in write mode, for a response header at
+         * the given position and a payload of at most the given length,
+         * keeping the bytes before the header, and moves past the header.
+         *
+         * @param header the position of the response header
+         * @param payload the largest payload length
+         */
+        private void reserve(int header, int payload) {
+            if (output.capacity() < header + HEADER_SIZE + payload) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * output.capacity(), header + HEADER_SIZE + payload));
+                output.limit(header);
+                output.position(0);
+                larger.put(output);
+                output = larger;
+            }
+            output.limit(output.capacity());
+            output.position(header + HEADER_SIZE);
+        }
+
+        /**
+         * This method fills in the response header once the payload is
+         * written, switching the output buffer back to read mode.
+         *
+         * @param header the position of the response header
+         * @param status the response status
+         * @param id the request id
+         */
+        private void end(int header, byte status, int id) {
+            output.put(header, status).putInt(header + 1, id).putInt(header + 5, output.position() - header - HEADER_SIZE);
+            output.flip();
+        }
+
+        /**
+         * This method writes as much output as the socket accepts and asks
+         * for a write event while some is left. A peer that lets too many
+         * answers pile up is not read from until they drain.
+         *
+         * @param key the selection key of the connection
+         * @throws IOException if the socket fails
+         */
+        void write(SelectionKey key) throws IOException {
+            channel.write(output);
+            if (output.remaining() > MAX_PENDING_OUTPUT) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(output.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+    }
+}
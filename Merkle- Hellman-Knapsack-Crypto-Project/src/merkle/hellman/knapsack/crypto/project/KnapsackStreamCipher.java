@@ -0,0 +1,226 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This class encrypts and decrypts input of any length with one Merkel
+ * hellman knapsack key. The input is split into blocks of the key's block
+ * size, and every block is written as one frame:
+ *
+ * <pre>
+ * int    number of plaintext bytes in the block (1 to block size)
+ * int    number of ciphertext bytes that follow
+ * byte[] the encrypted number, as BigInteger.toByteArray()
+ * </pre>
+ *
+ * Only one block and one frame are held in memory at a time, so memory use
+ * does not grow with the length of the input.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackStreamCipher {
+
+    //number of bytes in the frame header
+    public final static int FRAME_HEADER_SIZE = 8;
+
+    private final MerkleHellmanKnapsackCryptoProject crypto;
+    //largest ciphertext a frame may carry for this key
+    private final int maxCipherLength;
+
+    /**
+     * This is the constructor for the stream cipher.
+     *
+     * @param crypto the key used for every block
+     */
+    public KnapsackStreamCipher(MerkleHellmanKnapsackCryptoProject crypto) {
+        this.crypto = crypto;
+        this.maxCipherLength = crypto.getMaxCipherLength();
+    }
+
+    /**
+     * This method returns the largest number of bytes one frame can take.
+     *
+     * @return the largest frame length in bytes
+     */
+    public int getMaxFrameLength() {
+        return FRAME_HEADER_SIZE + maxCipherLength;
+    }
+
+    /**
+     * This method encrypts the whole stream.
+     *
+     * @param in the plaintext
+     * @param out receives the ciphertext frames
+     * @return the number of blocks written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(InputStream in, WritableByteChannel out) throws IOException {
+        return encrypt(Channels.newChannel(in), out);
+    }
+
+    /**
+     * This method encrypts the whole channel, one block at a time.
+     *
+     * @param in the plaintext
+     * @param out receives the ciphertext frames
+     * @return the number of blocks written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(crypto.getBlockSize());
+        ByteBuffer frame = ByteBuffer.allocate(getMaxFrameLength());
+        Object event = KnapsackEvents.beginEncrypt();
+        long blocks = 0;
+        long bytes = 0;
+        int length;
+        while ((length = readFully(in, block)) > 0) {
+            writeFrame(out, frame, length, crypto.encryptBlock(block.array(), 0, length));
+            blocks++;
+            bytes += length;
+        }
+        KnapsackEvents.endEncrypt(event, blocks, crypto.getParameters().getKnapsackLength(), bytes);
+        return blocks;
+    }
+
+    /**
+     * This method decrypts a whole stream of ciphertext frames.
+     *
+     * @param in the ciphertext frames
+     * @param out receives the plaintext
+     * @return the number of blocks read
+     * @throws IOException if reading or writing fails, or a frame is corrupt
+     */
+    public long decrypt(InputStream in, OutputStream out) throws IOException {
+        return decrypt(Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    /**
+     * This method decrypts a whole channel of ciphertext frames, one frame at
+     * a time.
+     *
+     * @param in the ciphertext frames
+     * @param out receives the plaintext
+     * @return the number of blocks read
+     * @throws IOException if reading or writing fails, or a frame is corrupt
+     */
+    public long decrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        BigInteger[] cipher = new BigInteger[1];
+        DecryptionContext context = crypto.getDecryptionContext();
+        DecryptionContext.Scratch scratch = context.newScratch();
+        Object event = KnapsackEvents.beginDecrypt();
+        long blocks = 0;
+        long bytes = 0;
+        int read;
+        while ((read = readFully(in, header)) > 0) {
+            if (read < FRAME_HEADER_SIZE) {
+                throw new EOFException("The frame header of block [" + blocks + "] is truncated.");
+            }
+            int length = readFrame(in, header, blocks, cipher, 0);
+            context.decryptBlock(cipher[0], block.array(), 0, scratch);
+            block.clear().limit(length);
+            writeFully(out, block);
+            blocks++;
+            bytes += length;
+        }
+        KnapsackEvents.endDecrypt(event, blocks, crypto.getParameters().getKnapsackLength(), bytes);
+        return blocks;
+    }
+
+    /**
+     * This method writes one frame through the frame buffer.
+     *
+     * @param out the channel to write
+     * @param frame a buffer of {@link #getMaxFrameLength()} bytes
+     * @param length the number of plaintext bytes in the block
+     * @param encrypted the encrypted block
+     * @throws IOException if writing fails
+     */
+    void writeFrame(WritableByteChannel out, ByteBuffer frame, int length, BigInteger encrypted) throws IOException {
+        frame.clear();
+        putFrame(frame, length, encrypted);
+        frame.flip();
+        writeFully(out, frame);
+    }
+
+    /**
+     * This method appends one frame to a buffer.
+     *
+     * @param buffer the buffer, with room for a frame
+     * @param length the number of plaintext bytes in the block
+     * @param encrypted the encrypted block
+     */
+    static void putFrame(ByteBuffer buffer, int length, BigInteger encrypted) {
+        byte[] cipher = encrypted.toByteArray();
+        buffer.putInt(length).putInt(cipher.length).put(cipher);
+    }
+
+    /**
+     * This method reads the rest of a frame whose header has already been
+     * read into the header buffer.
+     *
+     * @param in the channel to read
+     * @param header the full frame header
+     * @param index the number of the block, used in error messages
+     * @param cipher receives the encrypted number
+     * @param slot the position in cipher to fill
+     * @return the number of plaintext bytes in the block
+     * @throws IOException if reading fails or the frame is corrupt
+     */
+    int readFrame(ReadableByteChannel in, ByteBuffer header, long index, BigInteger[] cipher, int slot) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        header.flip();
+        int length = header.getInt();
+        int cipherLength = header.getInt();
+        if (length <= 0 || length > blockSize || cipherLength <= 0 || cipherLength > maxCipherLength) {
+            throw new IOException("The frame of block [" + index + "] is corrupt.");
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(cipherLength);
+        if (readFully(in, bytes) < cipherLength) {
+            throw new EOFException("The ciphertext of block [" + index + "] is truncated.");
+        }
+        cipher[slot] = new BigInteger(bytes.array());
+        return length;
+    }
+
+    /**
+     * This method reads until the buffer is full or the channel ends.
+     *
+     * @param in the channel to read
+     * @param buffer the buffer to fill, cleared first
+     * @return the number of bytes read, 0 at the end of the channel
+     * @throws IOException if reading fails
+     */
+    static int readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * This method writes every remaining byte of the buffer.
+     *
+     * @param out the channel to write
+     * @param buffer the bytes to write
+     * @throws IOException if writing fails
+     */
+    static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
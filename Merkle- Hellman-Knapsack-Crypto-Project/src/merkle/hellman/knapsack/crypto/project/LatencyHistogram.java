@@ -0,0 +1,107 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records latencies into power of two buckets: bucket k counts
+ * the samples from 2^k to 2^(k+1) - 1 nanoseconds. Every bucket is a
+ * {@link LongAdder}, which stripes its cells across contending threads, so
+ * recording takes no lock and threads rarely touch the same cache line.
+ * Percentiles are read to the upper bound of their bucket, within a factor
+ * of two.
+ *
+ * @author Anshu Anand
+ */
+public final class LatencyHistogram {
+
+    //one bucket per bit of a non negative long
+    private final static int BUCKETS = 63;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * This is the constructor for an empty histogram.
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * This method records one sample.
+     *
+     * @param nanos the latency in nanoseconds, values below 1 count as 1,
+     * the lower bound of the first bucket
+     * @comment Big Theeta(1)
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 1);
+        buckets[63 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * This method returns the number of samples recorded.
+     *
+     * @return the sample count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * This method returns the average latency.
+     *
+     * @return the mean in nanoseconds, 0 without samples
+     */
+    public double getMeanNanos() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : (double) totalNanos.sum() / samples;
+    }
+
+    /**
+     * This method returns the latency below which the given fraction of the
+     * samples fall, rounded up to the bound of its bucket. Samples recorded
+     * while the buckets are read may or may not be counted.
+     *
+     * @param fraction the percentile as a fraction, for example 0.99
+     * @return the latency in nanoseconds, 0 without samples
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            samples += counts[i];
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        //the rank of the sample, at least the first one
+        long rank = Math.max((long) Math.ceil(fraction * samples), 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * This method clears every sample. Samples recorded during the reset may
+     * be partly kept.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+}
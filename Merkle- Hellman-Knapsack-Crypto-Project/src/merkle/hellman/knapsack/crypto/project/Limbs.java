@@ -0,0 +1,102 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This class converts and compares non negative numbers held as little endian
+ * arrays of 32 bit limbs, the fixed width form the decryption side works on.
+ *
+ * @author Anshu Anand
+ */
+final class Limbs {
+
+    //the low 32 bits of a long
+    final static long MASK = 0xffffffffL;
+
+    private Limbs() {
+    }
+
+    /**
+     * This method returns the fixed width used for numbers modulo q: the
+     * limbs of q plus one, so a ciphertext, a sum of fewer than 2^31
+     * elements below q, fits as well.
+     *
+     * @param modulus q
+     * @return the limb count
+     */
+    static int count(BigInteger modulus) {
+        return (modulus.bitLength() + 31) / 32 + 1;
+    }
+
+    /**
+     * This method compares two numbers of the same limb count.
+     *
+     * @param a the first number
+     * @param b the second number
+     * @param n the limb count
+     * @return negative, zero or positive as a is below, equal to or above b
+     */
+    static int compare(int[] a, int[] b, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            if (a[i] != b[i]) {
+                return Integer.compareUnsigned(a[i], b[i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This method writes a non negative number as little endian limbs.
+     *
+     * @param value the number, which must fit the array
+     * @param limbs receives the limbs, higher limbs are cleared
+     * @exception IllegalArgumentException Indicates that value is negative or
+     * does not fit
+     */
+    static void toLimbs(BigInteger value, int[] limbs) {
+        if (value.signum() < 0 || value.bitLength() > 32 * limbs.length) {
+            throw new IllegalArgumentException("The number is out of range of [" + limbs.length + "] limbs.");
+        }
+        byte[] bytes = value.toByteArray();
+        for (int i = 0; i < limbs.length; i++) {
+            limbs[i] = 0;
+        }
+        //byte i from the end is bits 8i to 8i+7, a leading sign byte is zero
+        for (int i = 0; i < bytes.length && i / 4 < limbs.length; i++) {
+            limbs[i / 4] |= (bytes[bytes.length - 1 - i] & 0xff) << (8 * (i % 4));
+        }
+    }
+
+    /**
+     * This method reads little endian limbs as a non negative number.
+     *
+     * @param limbs the limbs
+     * @param n the number of limbs to read
+     * @return the number
+     */
+    static BigInteger fromLimbs(int[] limbs, int n) {
+        return fromLimbs(limbs, 0, n);
+    }
+
+    /**
+     * This method reads little endian limbs from a position of an array as a
+     * non negative number.
+     *
+     * @param limbs the array holding the limbs
+     * @param offset the index of the lowest limb
+     * @param n the number of limbs to read
+     * @return the number
+     */
+    static BigInteger fromLimbs(int[] limbs, int offset, int n) {
+        byte[] bytes = new byte[4 * n];
+        for (int i = 0; i < n; i++) {
+            int position = bytes.length - 4 * i;
+            int limb = limbs[offset + i];
+            bytes[position - 1] = (byte) limb;
+            bytes[position - 2] = (byte) (limb >>> 8);
+            bytes[position - 3] = (byte) (limb >>> 16);
+            bytes[position - 4] = (byte) (limb >>> 24);
+        }
+        return new BigInteger(1, bytes);
+    }
+}
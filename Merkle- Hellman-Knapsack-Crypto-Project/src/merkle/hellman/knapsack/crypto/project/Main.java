@@ -1,6 +1,14 @@
 package merkle.hellman.knapsack.crypto.project;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
 /**
@@ -10,36 +18,118 @@ import java.util.Scanner;
 public class Main {
 
     /**
-     * This method is main driver for testing  Merkel hellman knapsack crypto project
-     * @param args the command line arguments
+     * This method is main driver for testing  Merkel hellman knapsack crypto project.
+     * With no command it reads one line to encrypt. The commands work on
+     * files:
+     * <pre>
+     * keygen  key-file [knapsack-length]
+     * encrypt key-file plaintext-file frame-file
+     * decrypt key-file frame-file plaintext-file
+     * serve   key-file [port]
+     * </pre>
+     * @param args the command line arguments, optionally the knapsack length
+     * @throws IOException if a file command fails
      */
-    public static void main(String[] args) {
-        // TODO code application logic here
+    public static void main(String[] args) throws IOException {
+        //expose the crypto metrics to JMX clients such as jconsole
+        KnapsackMetrics.register();
+        //an empty first argument is no command either, runCommand prints the usage
+        if (args.length > 0 && (args[0].isEmpty() || !Character.isDigit(args[0].charAt(0)))) {
+            runCommand(args);
+            return;
+        }
+        //the knapsack length decides how many characters one key covers
+        KnapsackParameters.Builder builder = new KnapsackParameters.Builder();
+        if (args.length > 0) {
+            builder.knapsackLength(Integer.parseInt(args[0]));
+        }
+        MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject(builder.build());
+        int blockSize = crypto.getBlockSize();
+
         //ask for user's input:
         System.out.println("Enter a string and I will encrypt it as single large integer.");
 
         Scanner userInput = new Scanner(System.in);
         String inputLine = userInput.nextLine();
 
-        //test if the length of input is larger than 80 characters,if so, ask users to reinput
-        while (inputLine.length() > 80) {
-            System.out.println("the String is too long,please input a string less than 80 characters");
-            userInput = new Scanner(System.in);
+        //test if the UTF-8 length of input is larger than the block size,if so, ask users to reinput
+        while (inputLine.getBytes(StandardCharsets.UTF_8).length > blockSize) {
+            System.out.println("the String is too long,please input a string less than " + blockSize + " bytes in UTF-8");
             inputLine = userInput.nextLine();
         }
+        int inputBytes = inputLine.getBytes(StandardCharsets.UTF_8).length;
         //System.out.println(inputLine);
         System.out.println("Clear Text:");
         System.out.println(inputLine);
-        System.out.println("Number of clear text bytes = " + inputLine.length());
+        System.out.println("Number of clear text bytes = " + inputBytes);
 
         //encryption
-        MerkleHellmanKnapsackCryptoProject crypto = new MerkleHellmanKnapsackCryptoProject();
         BigInteger encryptedNum = crypto.encryptData(inputLine);
         System.out.println(inputLine + " is encrypted as ");
         System.out.println(encryptedNum);
+        //the binary wire form of the same ciphertext
+        ByteBuffer wire = ByteBuffer.allocate((int) CiphertextFormat.getMaxEncodedLength(crypto, inputBytes));
+        CiphertextFormat.writeHeader(wire, crypto.getKeyId(), 1);
+        CiphertextFormat.writeBlock(wire, inputBytes, encryptedNum);
+        System.out.println("Wire format: " + wire.position() + " bytes, decimal: " + encryptedNum.toString().length() + " digits");
 
         //decryption
         String decryptedString = crypto.decryptData(encryptedNum);
         System.out.println("Result of decryption: " + decryptedString);
+        System.out.println(KnapsackMetrics.getInstance());
+    }
+
+    /**
+     * This method runs a file command and prints its throughput.
+     *
+     * @param args the command and its arguments
+     * @throws IOException if reading or writing a file fails
+     */
+    private static void runCommand(String[] args) throws IOException {
+        String command = args[0];
+        if (command.equals("keygen") && (args.length == 2 || args.length == 3)) {
+            KnapsackParameters.Builder builder = new KnapsackParameters.Builder();
+            if (args.length == 3) {
+                builder.knapsackLength(Integer.parseInt(args[2]));
+            }
+            ParallelKeyGenerator generator = new ParallelKeyGenerator();
+            try {
+                MerkleHellmanKnapsackCryptoProject crypto = generator.generate(builder.build());
+                KeyFile.save(crypto, Paths.get(args[1]));
+                System.out.println("Key of " + crypto.getParameters().getKnapsackLength() + " elements saved to " + args[1]);
+            } finally {
+                generator.shutdown();
+            }
+            return;
+        }
+        if (command.equals("serve") && (args.length == 2 || args.length == 3)) {
+            int port = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+            KnapsackServer server = new KnapsackServer(KeyFile.load(Paths.get(args[1])),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            System.out.println("Serving on port " + server.getPort());
+            server.run();
+            return;
+        }
+        if (!(command.equals("encrypt") || command.equals("decrypt")) || args.length != 4) {
+            System.out.println("usage: keygen key-file [knapsack-length]");
+            System.out.println("       encrypt key-file plaintext-file frame-file");
+            System.out.println("       decrypt key-file frame-file plaintext-file");
+            System.out.println("       serve key-file [port]");
+            return;
+        }
+        boolean encrypt = command.equals("encrypt");
+        Path keyPath = Paths.get(args[1]);
+        Path source = Paths.get(args[2]);
+        Path target = Paths.get(args[3]);
+        //an encrypting process needs only the public part of the key
+        MerkleHellmanKnapsackCryptoProject crypto = encrypt ? KeyFile.loadPublic(keyPath) : KeyFile.load(keyPath);
+        KnapsackFileCipher cipher = new KnapsackFileCipher(crypto);
+        long start = System.nanoTime();
+        long blocks = encrypt ? cipher.encrypt(source, target) : cipher.decrypt(source, target);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long plaintext = Files.size(encrypt ? source : target);
+        System.out.printf("%s %d bytes in %d blocks, %.3f s: %.2f MB/s, %.0f blocks/s%n",
+                encrypt ? "Encrypted" : "Decrypted", plaintext, blocks, seconds,
+                plaintext / (1024.0 * 1024.0) / seconds, blocks / seconds);
     }
 }
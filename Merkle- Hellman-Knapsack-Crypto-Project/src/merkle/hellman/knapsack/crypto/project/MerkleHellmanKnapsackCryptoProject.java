@@ -1,210 +1,624 @@
 package merkle.hellman.knapsack.crypto.project;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.List;
 
 /**
  * This class is implementation of  Merkel Hellman knapsack crypto project.
+ * A key never changes once built: every field is final or a value computed
+ * once from final fields, so one instance can be shared by any number of
+ * threads encrypting and decrypting at once without locking.
+ * {@link KnapsackEngine} swaps keys atomically for rotation. The key is held
+ * as a {@link KnapsackPublicKey} and, unless it can only encrypt, a
+ * {@link KnapsackPrivateKey}; an encrypt only node loads just the former.
  * @author Anshu Anand
  */
 public class MerkleHellmanKnapsackCryptoProject {
-    //this holds random value
-    private final static int RANDOMSOLUTION = 10;
-     //this holds numbers of nodes
-    private final static int NODE_LIMIT = 640;
-    //SinglyLinkedList list to hold w, a private key
-    private SinglyLinkedList w;
-    //SinglyLinkedList list to hold public key
-    private SinglyLinkedList b;
-    private BigInteger q;
-    private BigInteger r;
+    //sizes the key was generated with
+    private final KnapsackParameters parameters;
+    //b and what encryption derives from it
+    private final KnapsackPublicKey publicKey;
+    //w, q, r and the decryption context, null for an encrypt only key
+    private final KnapsackPrivateKey privateKey;
 
     /**
      * Constructor when calling the constructor, creates a key b. The key will
      * not change for the encryption and decryption this time
      */
     public MerkleHellmanKnapsackCryptoProject() {
+        this(KnapsackParameters.DEFAULT);
+    }
+
+    /**
+     * Creates a key pair sized by the given parameters. The superincreasing
+     * sequence is built from a running sum, so generating w, q, r and b costs
+     * O(N) big integer operations. {@link ParallelKeyGenerator} builds the
+     * same kind of key on several cores.
+     *
+     * @param parameters the knapsack length and random bound of the key
+     */
+    public MerkleHellmanKnapsackCryptoProject(KnapsackParameters parameters) {
+        long start = System.nanoTime();
+        this.parameters = parameters;
+        int nodeLimit = parameters.getKnapsackLength();
         
         //Private key geneartion....Super increasing sequence
-        //Generate Superincreasing sequence
-        SinglyLinkedList seq = new SinglyLinkedList();
+        Object phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger[] wElements = new BigInteger[nodeLimit];
         //get random numbers
         SecureRandom srValue = new SecureRandom();
-
-        for (int i = 0; i < NODE_LIMIT; i++) {
-            BigInteger sumBfr = new BigInteger("1");
-            for (int j = 0; j < i; j++) {
-                //create new node
-                ObjectNode mm = seq.getObjectAt(j);
-                //get sum
-                sumBfr = sumBfr.add((BigInteger) mm.getData());
-            }
-            //generate big int
-            BigInteger bigInt = new BigInteger(String.valueOf(srValue.nextInt(RANDOMSOLUTION)));
-            //add up the sum
-            BigInteger newAdd = sumBfr.add(bigInt);
-            //Add the node ....
-            seq.addAtEndNode(newAdd);
-        }
-        //Assign the genearted sequence to list w
-        w = seq;
-
-        // get the sum value of W, this will be used to get value of q
-        BigInteger sum = new BigInteger("0");
-        for (int i = 0; i < seq.CountNodes(); i++) {
-            //get each node
-            ObjectNode nn = seq.getObjectAt(i);
-            //get data
-            BigInteger bigInt = (BigInteger) nn.getData();
-            //sum up the value.
-            sum = sum.add(bigInt);
-        }
+        // sum of every element, this will also be used to get value of q
+        BigInteger sum = superincreasingSequence(parameters, srValue, wElements);
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.SEQUENCE, nodeLimit);
 
         //Get a number for q , which would be prime 
         //and greater than the sum of Sequence w
-        q = sum.nextProbablePrime();
+        phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger q = sum.nextProbablePrime();
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.Q_SEARCH, nodeLimit);
         
 
         //step4:get r
+        phase = KnapsackEvents.beginKeygenPhase();
         int bitLength = q.bitLength();
-        int random;
+        BigInteger r;
 
         do {
-            random = srValue.nextInt(bitLength) + 1;//0<= sr.nextInt(bitLength)<bitLength
             r = BigInteger.probablePrime(bitLength, srValue);
 
         } while (q.compareTo(r) != 1);
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.R_SEARCH, nodeLimit);
 
         // Step5:genetrate b
-        SinglyLinkedList publicKey = new SinglyLinkedList();
-        for (int i = 0; i < seq.CountNodes(); i++) {
-            //get node value
-            ObjectNode pp = seq.getObjectAt(i);
-            //get data from node
-            BigInteger element = (BigInteger) pp.getData();
-            //add the new node in public key
+        phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger[] bElements = new BigInteger[nodeLimit];
+        for (int i = 0; i < nodeLimit; i++) {
             //use multiply(r).mod(q) method
-            publicKey.addAtEndNode(element.multiply(r).mod(q));
+            bElements[i] = wElements[i].multiply(r).mod(q);
         }
-        //public key is obtained for encryption
-        b = publicKey;
-        
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.DERIVATION, nodeLimit);
+        //both sequences are kept as contiguous limbs, see KnapsackElements
+        publicKey = new KnapsackPublicKey(parameters, bElements);
+        privateKey = new KnapsackPrivateKey(publicKey, wElements, q, r);
+        KnapsackMetrics.getInstance().recordKeygen(System.nanoTime() - start);
+    }
+
+    /**
+     * Creates a key from existing key material, as read back by
+     * {@link KeyFile}. Without w, q and r the key can only encrypt.
+     *
+     * @param parameters the parameters the key was generated with
+     * @param wElements the superincreasing sequence, or null
+     * @param q the modulus, or null
+     * @param r the multiplier, or null
+     * @param bElements the public key
+     */
+    MerkleHellmanKnapsackCryptoProject(KnapsackParameters parameters, BigInteger[] wElements,
+            BigInteger q, BigInteger r, BigInteger[] bElements) {
+        this(new KnapsackPublicKey(parameters, bElements), wElements, q, r);
+    }
+
+    private MerkleHellmanKnapsackCryptoProject(KnapsackPublicKey publicKey, BigInteger[] wElements,
+            BigInteger q, BigInteger r) {
+        this(wElements == null ? null : new KnapsackPrivateKey(publicKey, wElements, q, r), publicKey);
+    }
+
+    /**
+     * Creates an encrypt only key around a public key. Nothing but the
+     * public key is held, no private state and no decryption context.
+     *
+     * @param publicKey the public key, as loaded by
+     * {@link KeyFile#loadPublicKey(java.nio.file.Path)}
+     */
+    public MerkleHellmanKnapsackCryptoProject(KnapsackPublicKey publicKey) {
+        this(null, publicKey);
+    }
+
+    /**
+     * Creates a key able to encrypt and decrypt around a private key.
+     *
+     * @param privateKey the private key
+     */
+    public MerkleHellmanKnapsackCryptoProject(KnapsackPrivateKey privateKey) {
+        this(privateKey, privateKey.getPublicKey());
+    }
+
+    private MerkleHellmanKnapsackCryptoProject(KnapsackPrivateKey privateKey, KnapsackPublicKey publicKey) {
+        this.parameters = publicKey.getParameters();
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * This method generates a superincreasing sequence from a running sum,
+     * each element exceeding the sum of all previous ones by one plus a
+     * random value below the random bound.
+     *
+     * @param parameters the knapsack length and random bound
+     * @param random the source of the random values
+     * @param w receives the knapsack length elements
+     * @return the sum of the sequence
+     * @comment one addition per element, so this routine is Big Theeta(N)
+     */
+    static BigInteger superincreasingSequence(KnapsackParameters parameters, SecureRandom random, BigInteger[] w) {
+        // running sum of every element generated so far
+        BigInteger sum = BigInteger.ZERO;
+        for (int i = 0; i < w.length; i++) {
+            //generate big int
+            BigInteger bigInt = BigInteger.valueOf(random.nextInt(parameters.getRandomBound()));
+            //next element is greater than the sum of all previous elements
+            w[i] = sum.add(BigInteger.ONE).add(bigInt);
+            //add up the sum
+            sum = sum.add(w[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * This method returns the sizes this key was generated with.
+     *
+     * @return the key parameters
+     */
+    public KnapsackParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * This method returns the public part of this key.
+     *
+     * @return the public key
+     */
+    public KnapsackPublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * This method returns the private part of this key.
+     *
+     * @return the private key
+     * @exception IllegalStateException Indicates that this key has no private
+     * part
+     */
+    public KnapsackPrivateKey getPrivateKey() {
+        if (privateKey == null) {
+            throw new IllegalStateException("The key holds no private part, it can only encrypt.");
+        }
+        return privateKey;
+    }
+
+    /**
+     * This method returns the number of plaintext bytes one encryption call
+     * covers.
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return parameters.getBlockSize();
+    }
+
+    /**
+     * This method tells if this key holds the private part and so can
+     * decrypt.
+     *
+     * @return true when w, q and r are present
+     */
+    public boolean hasPrivateKey() {
+        return privateKey != null;
+    }
+
+    /**
+     * This method returns a 64 bit id of the public key, see
+     * {@link KnapsackPublicKey#getKeyId()}. Keys with the same b, such as a
+     * key and its public part loaded from a {@link KeyFile}, have the same
+     * id, so ciphertext can name the key that decrypts it.
+     *
+     * @return the key id
+     */
+    public long getKeyId() {
+        return publicKey.getKeyId();
+    }
+
+    /**
+     * This method returns the superincreasing sequence w.
+     *
+     * @return the elements of w, null for an encrypt only key
+     */
+    BigInteger[] getW() {
+        return privateKey == null ? null : privateKey.getW();
+    }
+
+    /**
+     * This method returns the public key b.
+     *
+     * @return the elements of b
+     */
+    BigInteger[] getB() {
+        return publicKey.getB();
+    }
+
+    /**
+     * This method returns the bit length of the largest element of b.
+     *
+     * @return the largest element bit length
+     */
+    int getMaxElementBits() {
+        return publicKey.getMaxElementBits();
+    }
+
+    /**
+     * This method returns the modulus q.
+     *
+     * @return q, null for an encrypt only key
+     */
+    BigInteger getQ() {
+        return privateKey == null ? null : privateKey.getQ();
+    }
+
+    /**
+     * This method returns the multiplier r.
+     *
+     * @return r, null for an encrypt only key
+     */
+    BigInteger getR() {
+        return privateKey == null ? null : privateKey.getR();
+    }
+
+    /**
+     * This method returns the number of heap bytes the elements of w and b
+     * take, both stored as contiguous limbs.
+     *
+     * @return the footprint of the key elements in bytes
+     */
+    public long getFootprint() {
+        return publicKey.getFootprint() + (privateKey == null ? 0 : privateKey.getFootprint());
+    }
+
+    /**
+     * This method returns the estimated heap taken by the precomputed
+     * encryption table.
+     *
+     * @return the footprint in bytes, 0 when precomputed encryption is off
+     */
+    public long getEncryptionTableFootprint() {
+        return publicKey.getEncryptionTableFootprint();
+    }
+
+    /**
+     * This method returns the largest number of bytes an encrypted block can
+     * take as BigInteger.toByteArray(): a sum of N elements of b, plus the
+     * sign byte.
+     *
+     * @return the largest ciphertext length in bytes
+     */
+    public int getMaxCipherLength() {
+        return publicKey.getMaxCipherLength();
     }
 
     /**
      * preconditions: s is a string. Crypto instance is correctly built so as to
-     * call this method. postconditions:encrypt the user's input string to
-     * return a BigInteger encrypted number.
+     * call this method. postconditions:encrypt the UTF-8 bytes of the user's
+     * input string to return a BigInteger encrypted number.
      *
      * @param s the user's input string
-     * @return a BigInteger as the encrypted number Big-Theta(N^2) for any cases
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that the UTF-8 bytes of s
+     * are more than the block size
      */
     public BigInteger encryptData(String s) {
-        //Convert Input text data to binary data format
-        String bits = ConvertToBinary(s);
-        // for each num in bits,multiply by b's each element
-        BigInteger encryptedNum = BigInteger.ZERO;
-        for (int i = 0; i < bits.length(); i++) {
-            //get bit value
-            String c = "" + String.valueOf(bits.charAt(i));
-            //get respective node data to multiply to bit value
-            ObjectNode x =b.getObjectAt(i);
-            BigInteger a1 = (BigInteger) x.getData() ;
-            //multiply value
-            BigInteger a2 = a1.multiply(new BigInteger(c));
-            //get the encrypted value
-            encryptedNum = encryptedNum.add(a2);
-        }
-        return encryptedNum;
+        return encryptData(s, new byte[getBlockSize()]);
+    }
 
+    /**
+     * preconditions: block has room for a whole block. postconditions:
+     * encrypt the UTF-8 bytes of the user's input string, using block to
+     * hold them, so nothing but the encrypted number is allocated.
+     *
+     * @param s the user's input string
+     * @param block a caller supplied buffer of at least the block size
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that the UTF-8 bytes of s
+     * are more than the block size
+     */
+    public BigInteger encryptData(CharSequence s, byte[] block) {
+        Object event = KnapsackEvents.beginEncrypt();
+        //Convert Input text data to its UTF-8 bytes
+        int length = toBytes(s, block, 0);
+        BigInteger encrypted = encryptBlock(block, 0, length);
+        KnapsackEvents.endEncrypt(event, 1, parameters.getKnapsackLength(), length);
+        return encrypted;
     }
 
     /**
      * precondition: big should be BigInteger type. postcondition:this method
-     * decrypts a BigInteger encrypted number to the user's input string.
+     * decrypts a BigInteger encrypted number to the user's input string,
+     * reading the bytes up to the first zero byte as UTF-8.
      *
      * @param big is the encrypted number that needs to be decrypted
-     * @return the string that the user input. Big-Theta(1) for any cases
+     * @return the string that the user input. Big-Theta(N) for any cases
      */
     public String decryptData(BigInteger big) {
-        //hold decrypted bits
-        String decryptBits = "";
-        //hold decrypted string
-        String decrypString = "";
-        
-        //get the big integer for decomposition
-        BigInteger decomp = r.modInverse(q).multiply(big).mod(q).mod(q);
-        
-        BigInteger tmp = decomp;
-        //apply private key on data
-        //obtaine the decrypted bits ...........
-        for (int i = w.CountNodes()- 1; i >= 0; i--) {
-            //get node value
-            ObjectNode y = w.getObjectAt(i);
-            if (tmp.compareTo((BigInteger) y.getData()) != -1) {
-                if (tmp != BigInteger.ZERO) {
-                    tmp = tmp.subtract((BigInteger) y.getData());
-                }
-                //assign value
-                decryptBits = "1" + decryptBits;
-            } else {
-                //assign value
-                decryptBits = "0" + decryptBits;
-            }
-        }
+        StringBuilder decrypString = new StringBuilder(getBlockSize());
+        decryptData(big, new byte[getBlockSize()], decrypString);
+        //return decrypted data
+        return decrypString.toString();
+    }
+
+    /**
+     * precondition: block has room for a whole block. postcondition: this
+     * method decrypts a BigInteger encrypted number and appends the user's
+     * input string to out, reading the bytes up to the first zero byte as
+     * UTF-8. Both buffers are supplied by the caller, so they can be reused
+     * from call to call.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param block a caller supplied buffer of at least the block size
+     * @param out receives the decrypted characters
+     * @return the number of characters appended. Big-Theta(N) for any cases
+     */
+    public int decryptData(BigInteger big, byte[] block, StringBuilder out) {
+        Object event = KnapsackEvents.beginDecrypt();
+        getDecryptionContext().decryptBlock(big, block, 0);
         //convert binary data to text
-        String ee;
-        for (int i = 0; i < decryptBits.length(); i = i + 8) {
-            
-            ee = decryptBits.substring(i, i + 8);
-            if ("00000000".equals(ee)) {
-                break;
+        int length = textLength(block, 0);
+        int before = out.length();
+        out.append(new String(block, 0, length, StandardCharsets.UTF_8));
+        KnapsackEvents.endDecrypt(event, 1, parameters.getKnapsackLength(), length);
+        return out.length() - before;
+    }
+
+    /**
+     * precondition: the remaining bytes of in are at most the block size.
+     * postcondition: encrypts them as one block, reading them where they lie,
+     * so a direct buffer is never copied onto the heap. The position of in
+     * is moved to its limit.
+     *
+     * @param in the plaintext bytes between position and limit
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that more bytes remain
+     * than the block size
+     */
+    public BigInteger encrypt(ByteBuffer in) {
+        return publicKey.encrypt(in);
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: decrypts
+     * the encrypted number and puts the first length bytes of the block into
+     * out, zero bytes included, so binary data survives the round trip.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param length the number of plaintext bytes the block holds
+     * @param out receives the bytes at its position, heap or direct
+     * @return the number of bytes put. Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public int decrypt(BigInteger big, int length, ByteBuffer out) {
+        return getPrivateKey().decrypt(big, length, out);
+    }
+
+    /**
+     * precondition: results has room for every message. postcondition:
+     * encrypts each message as its own block into the matching slot of
+     * results. One block buffer and one sum accumulator are shared by the
+     * whole batch, so each message allocates only its encrypted number.
+     *
+     * @param messages the user's input strings
+     * @param results receives the encrypted numbers, same order as messages
+     * @return the number of messages encrypted. Big-Theta(N) per message
+     * @exception IllegalArgumentException Indicates that a message is longer
+     * than the block size, or results is shorter than messages
+     */
+    public int encryptBatch(CharSequence[] messages, BigInteger[] results) {
+        if (results.length < messages.length) {
+            throw new IllegalArgumentException("The results [" + results.length + "] are fewer than the messages [" + messages.length + "].");
+        }
+        Object event = KnapsackEvents.beginEncrypt();
+        KnapsackMetrics metrics = KnapsackMetrics.getInstance();
+        //the table already turns a block into one addition per byte
+        SubsetSumEncoder encoder = publicKey.getBatchEncoder();
+        int[] sum = encoder == null ? null : encoder.newAccumulator();
+        byte[] block = new byte[getBlockSize()];
+        long bytes = 0;
+        for (int i = 0; i < messages.length; i++) {
+            int length = toBytes(messages[i], block, 0);
+            if (encoder == null) {
+                results[i] = encryptBlock(block, 0, length);
             } else {
-                //obtain decrpted string value
-                decrypString += new Character((char) Integer.parseInt(ee, 2)).toString();
+                long start = System.nanoTime();
+                results[i] = encoder.encode(block, 0, length, sum);
+                metrics.recordEncrypt(System.nanoTime() - start, length);
             }
+            bytes += length;
+        }
+        KnapsackEvents.endEncrypt(event, messages.length, parameters.getKnapsackLength(), bytes);
+        return messages.length;
+    }
+
+    /**
+     * This method encrypts a list of messages, each as its own block.
+     *
+     * @param messages the user's input strings
+     * @return the encrypted numbers, same order as messages
+     * @exception IllegalArgumentException Indicates that a message is longer
+     * than the block size
+     */
+    public BigInteger[] encryptBatch(List<? extends CharSequence> messages) {
+        BigInteger[] results = new BigInteger[messages.size()];
+        encryptBatch(messages.toArray(new CharSequence[0]), results);
+        return results;
+    }
 
+    /**
+     * precondition: results has room for every encrypted number.
+     * postcondition: decrypts each number into the matching slot of results,
+     * each string stopping at the first zero byte like
+     * {@link #decryptData(BigInteger)}. The block buffer and the decryption
+     * scratch are shared by the whole batch.
+     *
+     * @param encrypted the encrypted numbers
+     * @param results receives the strings, same order as encrypted
+     * @return the number of strings decrypted. Big-Theta(N) per number
+     * @exception IllegalArgumentException Indicates that results is shorter
+     * than encrypted
+     */
+    public int decryptBatch(BigInteger[] encrypted, String[] results) {
+        if (results.length < encrypted.length) {
+            throw new IllegalArgumentException("The results [" + results.length + "] are fewer than the encrypted numbers [" + encrypted.length + "].");
         }
-        //return decrypted data
-        return decrypString;
+        DecryptionContext context = getDecryptionContext();
+        Object event = KnapsackEvents.beginDecrypt();
+        DecryptionContext.Scratch scratch = context.newScratch();
+        byte[] block = new byte[getBlockSize()];
+        long bytes = 0;
+        for (int i = 0; i < encrypted.length; i++) {
+            context.decryptBlock(encrypted[i], block, 0, scratch);
+            int length = textLength(block, 0);
+            results[i] = new String(block, 0, length, StandardCharsets.UTF_8);
+            bytes += length;
+        }
+        KnapsackEvents.endDecrypt(event, encrypted.length, parameters.getKnapsackLength(), bytes);
+        return encrypted.length;
+    }
+
+    /**
+     * This method decrypts a list of encrypted numbers.
+     *
+     * @param encrypted the encrypted numbers
+     * @return the strings, same order as encrypted
+     */
+    public String[] decryptBatch(List<BigInteger> encrypted) {
+        String[] results = new String[encrypted.size()];
+        decryptBatch(encrypted.toArray(new BigInteger[0]), results);
+        return results;
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: writes the UTF-8 bytes of the input, the bytes
+     * {@link #decryptData(BigInteger)} turns back into the same text, without
+     * allocating. A surrogate without its pair is written as '?', as
+     * String.getBytes does.
+     *
+     * @param input is the text that user inputs.
+     * @param block the buffer receiving the bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written. Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that the UTF-8 bytes of
+     * input are more than the block size
+     */
+    public int toBytes(CharSequence input, byte[] block, int offset) {
+        return publicKey.toBytes(input, block, offset);
+    }
+
+    /**
+     * This method returns the number of bytes of a decrypted block before
+     * its first zero byte, the end of a text block.
+     *
+     * @param block the decrypted block
+     * @param offset the position of the first byte in block
+     * @return the text length in bytes
+     */
+    private int textLength(byte[] block, int offset) {
+        int blockSize = getBlockSize();
+        int length = 0;
+        while (length < blockSize && block[offset + length] != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * precondition: length is at most the block size. postcondition: encrypts
+     * the bytes as one block, most significant bit of each byte first, the
+     * same bit order as {@link #ConvertToBinary(String)}.
+     *
+     * @param block the array holding the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @param length the number of bytes to encrypt
+     * @return a BigInteger as the encrypted number Big-Theta(N) for any cases
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    public BigInteger encryptBlock(byte[] block, int offset, int length) {
+        return publicKey.encryptBlock(block, offset, length);
+    }
+
+    /**
+     * This method encrypts bytes of a buffer as one block, reading them by
+     * absolute index, so neither the position nor the limit moves.
+     *
+     * @param buffer the buffer holding the plaintext bytes, heap or direct
+     * @param index the index of the first byte in buffer
+     * @param length the number of bytes to encrypt
+     * @return the encrypted number
+     * @exception IllegalArgumentException Indicates that length is greater
+     * than the block size
+     */
+    BigInteger encryptBlock(ByteBuffer buffer, int index, int length) {
+        return publicKey.encryptBlock(buffer, index, length);
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: decrypts the encrypted number into block size bytes,
+     * including any trailing zero bytes, so binary data survives the round
+     * trip.
+     *
+     * @param big is the encrypted number that needs to be decrypted
+     * @param block the array receiving the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written, which is the block size
+     */
+    public int decryptBlock(BigInteger big, byte[] block, int offset) {
+        return getPrivateKey().decryptBlock(big, block, offset);
+    }
+
+    /**
+     * This method returns the decryption context built with this key.
+     *
+     * @return the context holding r inverse and w
+     * @exception IllegalStateException Indicates that this key has no private
+     * part
+     */
+    public DecryptionContext getDecryptionContext() {
+        return getPrivateKey().getDecryptionContext();
+    }
+
+    /**
+     * This method builds a new decryption context for this key, computing r
+     * inverse mod q again.
+     *
+     * @return a new context
+     */
+    DecryptionContext newDecryptionContext() {
+        return getPrivateKey().newDecryptionContext();
     }
 
     /**
      * precondition:input should be string postcondition: convert the input
-     * string into binary represented string. For instance, convert "D" to
-     * '010000100'
+     * string into binary represented string, 8 bits per UTF-8 byte as
+     * {@link #toBytes(CharSequence, byte[], int)} encodes it. For instance,
+     * convert "D" to '01000100'. Encryption works on the bytes directly, this
+     * method is kept for displaying them.
      *
      * @param input is the text that user inputs.
      * @return a binary string Big-Theta(N) for any cases
      */
     public String ConvertToBinary(String input) {
-        //string to hold byte string value
-        String byteStringValue;
-        //string to hold final binary data
-        String finalStringValue = "";
-        int diff;
-        //read the character of input string one by one and convert to binary
-        for (int i = 0; i < input.length(); i++) {
-            //get the character at each string position
-            String c = "" + input.charAt(i);
-            //get the byte value as big integer
-            BigInteger s2 = new BigInteger(c.getBytes());
-            //asign the byte value as string
-            byteStringValue = s2.toString(2);
-             
-            //obtain the difference of byte value with respect to 8 bits value
-            diff = 8 - byteStringValue.length();
-            //if diff is not zero
-            while (diff != 0) {
-                //concatinate 0 as prefix to  make it 8 bit value
-                byteStringValue = "0" + byteStringValue;
-                diff = 8 - byteStringValue.length();
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        //hold final binary data
+        char[] finalValue = new char[bytes.length * 8];
+        //read the bytes of input string one by one and convert to binary
+        for (int i = 0; i < bytes.length; i++) {
+            int value = bytes[i] & 0xff;
+            for (int bit = 0; bit < 8; bit++) {
+                finalValue[i * 8 + bit] = (value & (0x80 >>> bit)) != 0 ? '1' : '0';
             }
-            //append the bytestring on final string value.
-            finalStringValue += byteStringValue;
-
         }
-
-        return finalStringValue;
+        return new String(finalValue);
     }
 }
@@ -0,0 +1,43 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This interface is the arithmetic used on the decryption side: multiplying a
+ * ciphertext by a fixed factor, r inverse, modulo the fixed modulus q. The
+ * factor and the modulus are given when the multiplier is created, so an
+ * implementation can precompute anything that depends only on them.
+ * Implementations must be safe to share between threads.
+ *
+ * @author Anshu Anand
+ */
+public interface ModularMultiplier {
+
+    /**
+     * This method multiplies by the factor modulo the modulus.
+     *
+     * @param c a non negative number
+     * @return factor * c mod modulus
+     */
+    BigInteger multiply(BigInteger c);
+
+    /**
+     * This method multiplies by the factor modulo the modulus and writes the
+     * result as fixed width limbs, the form the decoder reads.
+     *
+     * @param c a non negative number below 2^32 times the modulus
+     * @param result receives factor * c mod modulus as
+     * {@link Limbs#count(BigInteger)} limbs
+     * @param scratch an array from {@link #newScratch()}, not shared between
+     * threads
+     */
+    void multiply(BigInteger c, int[] result, int[] scratch);
+
+    /**
+     * This method creates the scratch array
+     * {@link #multiply(BigInteger, int[], int[])} works in.
+     *
+     * @return a new scratch array
+     */
+    int[] newScratch();
+}
@@ -0,0 +1,150 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+
+/**
+ * This class multiplies modulo an odd modulus q with Montgomery reduction on
+ * fixed width limbs. Numbers are held as little endian arrays of 32 bit
+ * limbs, so the 64 bit products fit a long without an unsigned multiply
+ * high. The factor is kept in Montgomery form, factor * R mod q, so one
+ * Montgomery product of it with c gives factor * c mod q directly.
+ *
+ * R is 2^(32 * (k + 1)) where q takes k limbs. The extra limb lets c be up
+ * to 2^32 times larger than q, which covers every ciphertext: a sum of fewer
+ * than 2^31 elements below q.
+ *
+ * @author Anshu Anand
+ */
+public class MontgomeryMultiplier implements ModularMultiplier {
+
+    private final static long MASK = Limbs.MASK;
+
+    //number of limbs of every operand
+    private final int limbs;
+    //q as limbs
+    private final int[] modulus;
+    //factor * R mod q as limbs
+    private final int[] factor;
+    //-q^-1 mod 2^32
+    private final int modulusInverse;
+    private final BigInteger modulusValue;
+
+    /**
+     * This is the constructor for the multiplier.
+     *
+     * @param factor the number every input is multiplied by
+     * @param modulus the odd modulus
+     * @exception IllegalArgumentException Indicates that the modulus is even
+     */
+    public MontgomeryMultiplier(BigInteger factor, BigInteger modulus) {
+        if (!modulus.testBit(0)) {
+            throw new IllegalArgumentException("The modulus must be odd for Montgomery reduction.");
+        }
+        this.modulusValue = modulus;
+        this.limbs = Limbs.count(modulus);
+        this.modulus = new int[limbs];
+        Limbs.toLimbs(modulus, this.modulus);
+        this.factor = new int[limbs];
+        Limbs.toLimbs(factor.shiftLeft(32 * limbs).mod(modulus), this.factor);
+        //Newton iteration for q^-1 mod 2^32, each step doubles the good bits
+        int inverse = this.modulus[0];
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - this.modulus[0] * inverse;
+        }
+        this.modulusInverse = -inverse;
+    }
+
+    /**
+     * This method returns the number of limbs of every operand.
+     *
+     * @return the limb count
+     */
+    public int getLimbCount() {
+        return limbs;
+    }
+
+    /**
+     * This method creates a scratch array for
+     * {@link #multiply(int[], int[], int[])}.
+     *
+     * @return a scratch array of limb count + 2 limbs
+     */
+    @Override
+    public int[] newScratch() {
+        return new int[limbs + 2];
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger c) {
+        int[] result = new int[limbs];
+        multiply(c, result, newScratch());
+        return Limbs.fromLimbs(result, limbs);
+    }
+
+    @Override
+    public void multiply(BigInteger c, int[] result, int[] scratch) {
+        Limbs.toLimbs(c, result);
+        multiply(result, result, scratch);
+    }
+
+    /**
+     * This method multiplies by the factor modulo the modulus, on limbs and
+     * without allocating.
+     *
+     * @param c the input as limb count limbs, below 2^(32 * limb count)
+     * @param result receives factor * c mod modulus as limb count limbs, may
+     * be the same array as c
+     * @param scratch an array from {@link #newScratch()}, not shared between
+     * threads
+     * @comment the coarsely integrated operand scanning form, so this routine
+     * is Big Theeta(N^2) in the limb count
+     */
+    public void multiply(int[] c, int[] result, int[] scratch) {
+        int n = limbs;
+        int[] t = scratch;
+        for (int i = 0; i < n + 2; i++) {
+            t[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            //t += factor * c[i]
+            long ci = c[i] & MASK;
+            long carry = 0;
+            for (int j = 0; j < n; j++) {
+                long sum = (t[j] & MASK) + (factor[j] & MASK) * ci + carry;
+                t[j] = (int) sum;
+                carry = sum >>> 32;
+            }
+            long sum = (t[n] & MASK) + carry;
+            t[n] = (int) sum;
+            t[n + 1] = (int) (sum >>> 32);
+
+            //t = (t + m * q) / 2^32, with m chosen so the low limb is zero
+            long m = (t[0] * modulusInverse) & MASK;
+            sum = (t[0] & MASK) + m * (modulus[0] & MASK);
+            carry = sum >>> 32;
+            for (int j = 1; j < n; j++) {
+                sum = (t[j] & MASK) + m * (modulus[j] & MASK) + carry;
+                t[j - 1] = (int) sum;
+                carry = sum >>> 32;
+            }
+            sum = (t[n] & MASK) + carry;
+            t[n - 1] = (int) sum;
+            t[n] = t[n + 1] + (int) (sum >>> 32);
+        }
+        //t is below 2q, so one subtraction brings it below q
+        if (t[n] != 0 || Limbs.compare(t, modulus, n) >= 0) {
+            long borrow = 0;
+            for (int j = 0; j < n; j++) {
+                long difference = (t[j] & MASK) - (modulus[j] & MASK) - borrow;
+                t[j] = (int) difference;
+                borrow = (difference >>> 63);
+            }
+        }
+        System.arraycopy(t, 0, result, 0, n);
+    }
+
+    @Override
+    public String toString() {
+        return "MontgomeryMultiplier[modulus bits=" + modulusValue.bitLength() + ", limbs=" + limbs + "]";
+    }
+}
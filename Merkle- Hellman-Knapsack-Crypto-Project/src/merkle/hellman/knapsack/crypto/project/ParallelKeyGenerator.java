@@ -0,0 +1,352 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class generates Merkel hellman knapsack key pairs on several cores.
+ * The superincreasing sequence is a running sum and stays sequential, but
+ * the rest of key generation splits across a fork/join pool:
+ *
+ * <ul>
+ * <li>q and r are found by sieving a window of odd candidates once against
+ * the small primes, then testing the survivors concurrently. q is the
+ * smallest probable prime above the sum of w, as in the constructor.</li>
+ * <li>r is drawn as the constructor draws it: a prime of q's bit length,
+ * redrawn until it falls below q. Each draw searches upward from a random
+ * start of that bit length, the way BigInteger.probablePrime does above
+ * {@value #SIEVED_PRIME_BITS} bits, so r has the same distribution.</li>
+ * <li>b_i = w_i * r mod q is derived for ranges of elements in parallel.</li>
+ * </ul>
+ *
+ * The keys are the same kind as those of
+ * {@link MerkleHellmanKnapsackCryptoProject#MerkleHellmanKnapsackCryptoProject(KnapsackParameters)}.
+ *
+ * @author Anshu Anand
+ */
+public class ParallelKeyGenerator {
+
+    //the certainty BigInteger uses for its own prime searches
+    private final static int CERTAINTY = 100;
+    //odd primes the candidate windows are sieved with
+    private final static int[] SMALL_PRIMES = oddPrimesBelow(1 << 14);
+    //candidates below this are searched sequentially, the sieve would strike them
+    private final static BigInteger SIEVE_LIMIT = BigInteger.valueOf(1 << 14);
+    //bit length from which BigInteger.probablePrime sieves upward from a random start
+    private final static int SIEVED_PRIME_BITS = 95;
+    //ranges of at most this many elements are not split further
+    private final static int SPLIT_THRESHOLD = 64;
+
+    private final ForkJoinPool pool;
+    //SecureRandom is safe to share between threads
+    private final SecureRandom random;
+
+    /**
+     * This is the constructor for a generator using every available core.
+     */
+    public ParallelKeyGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This is the constructor for a generator using the given number of
+     * threads.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public ParallelKeyGenerator(int parallelism) {
+        this(parallelism, new SecureRandom());
+    }
+
+    /**
+     * This is the constructor for a generator drawing from the given source,
+     * so two generators seeded alike build the same keys.
+     *
+     * @param parallelism the number of worker threads
+     * @param random the source of the sequence and of r
+     */
+    ParallelKeyGenerator(int parallelism, SecureRandom random) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism [" + parallelism + "] is not positive.");
+        }
+        this.pool = new ForkJoinPool(parallelism);
+        this.random = random;
+    }
+
+    /**
+     * This method returns the number of worker threads.
+     *
+     * @return the parallelism level
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * This method generates a key pair sized by the given parameters.
+     *
+     * @param parameters the sizes of the key
+     * @return the new key, able to encrypt and decrypt
+     */
+    public MerkleHellmanKnapsackCryptoProject generate(KnapsackParameters parameters) {
+        long start = System.nanoTime();
+        int n = parameters.getKnapsackLength();
+        Object phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger[] w = new BigInteger[n];
+        BigInteger sum = MerkleHellmanKnapsackCryptoProject.superincreasingSequence(parameters, random, w);
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.SEQUENCE, n);
+        phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger q = nextPrime(sum);
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.Q_SEARCH, n);
+        phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger r = primeBelow(q);
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.R_SEARCH, n);
+        phase = KnapsackEvents.beginKeygenPhase();
+        BigInteger[] b = new BigInteger[n];
+        pool.invoke(new DeriveTask(w, b, q, r, 0, n));
+        KnapsackEvents.endKeygenPhase(phase, KnapsackEvents.DERIVATION, n);
+        MerkleHellmanKnapsackCryptoProject key = new MerkleHellmanKnapsackCryptoProject(parameters, w, q, r, b);
+        KnapsackMetrics.getInstance().recordKeygen(System.nanoTime() - start);
+        return key;
+    }
+
+    /**
+     * This method stops the worker threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * This method finds the smallest probable prime above a number.
+     *
+     * @param from the number
+     * @return the same prime as from.nextProbablePrime()
+     */
+    BigInteger nextPrime(BigInteger from) {
+        if (from.compareTo(SIEVE_LIMIT) < 0) {
+            return from.nextProbablePrime();
+        }
+        int window = window(from.bitLength());
+        //first odd number above from
+        BigInteger base = from.add(BigInteger.ONE).setBit(0);
+        while (true) {
+            BigInteger prime = searchWindow(base, window);
+            if (prime != null) {
+                return prime;
+            }
+            base = base.add(BigInteger.valueOf(2L * window));
+        }
+    }
+
+    /**
+     * This method finds a probable prime below q of the same bit length,
+     * drawing primes of that bit length until one is below q.
+     *
+     * @param q the modulus
+     * @return a prime r with r &lt; q and the bit length of q
+     */
+    BigInteger primeBelow(BigInteger q) {
+        int bitLength = q.bitLength();
+        if (bitLength < SIEVED_PRIME_BITS) {
+            //BigInteger draws independent candidates at this size, and so does the constructor
+            BigInteger r;
+            do {
+                r = BigInteger.probablePrime(bitLength, random);
+            } while (q.compareTo(r) != 1);
+            return r;
+        }
+        //the window BigInteger.probablePrime sieves, odd candidates from a random start
+        int window = bitLength / 20 * 64;
+        while (true) {
+            BigInteger start = new BigInteger(bitLength, random).setBit(bitLength - 1).setBit(0);
+            BigInteger prime = searchWindow(start, window);
+            //a prime at or above q is drawn again, as the constructor does
+            if (prime != null && prime.compareTo(q) < 0) {
+                return prime;
+            }
+        }
+    }
+
+    /**
+     * This method sieves a window of odd candidates against the small primes
+     * and tests the survivors on the pool, each worker claiming the next
+     * untested survivor.
+     *
+     * @param base the first candidate, odd and above every small prime
+     * @param window the number of odd candidates base, base + 2, ...
+     * @return the smallest probable prime of the window, or null when there
+     * is none
+     */
+    private BigInteger searchWindow(BigInteger base, int window) {
+        boolean[] composite = new boolean[window];
+        for (int p : SMALL_PRIMES) {
+            int residue = base.mod(BigInteger.valueOf(p)).intValue();
+            //base + 2k = 0 mod p, with (p + 1) / 2 the inverse of 2
+            int k = (int) ((long) ((p - residue) % p) * ((p + 1) / 2) % p);
+            for (; k < window; k += p) {
+                composite[k] = true;
+            }
+        }
+        int[] survivors = new int[window];
+        int count = 0;
+        for (int k = 0; k < window; k++) {
+            if (!composite[k]) {
+                survivors[count++] = k;
+            }
+        }
+        Search search = new Search(base, survivors, count);
+        pool.invoke(new SearchTask(search, pool.getParallelism()));
+        int found = search.best.get();
+        return found == Integer.MAX_VALUE ? null : search.candidate(survivors[found]);
+    }
+
+    /**
+     * This method sizes a candidate window to a few times the expected gap
+     * between primes of the given bit length, about bit length * ln 2.
+     *
+     * @param bitLength the bit length of the candidates
+     * @return the number of odd candidates in a window
+     */
+    private static int window(int bitLength) {
+        return Math.max(256, bitLength * 2);
+    }
+
+    /**
+     * This method lists the odd primes below a bound with the sieve of
+     * Eratosthenes.
+     *
+     * @param bound the exclusive bound
+     * @return the odd primes in increasing order
+     */
+    private static int[] oddPrimesBelow(int bound) {
+        boolean[] composite = new boolean[bound];
+        int[] primes = new int[bound / 2];
+        int count = 0;
+        for (int i = 3; i < bound; i += 2) {
+            if (!composite[i]) {
+                primes[count++] = i;
+                for (long j = (long) i * i; j < bound; j += 2L * i) {
+                    composite[(int) j] = true;
+                }
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(primes, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * This class holds one window search shared by the workers.
+     */
+    private static final class Search {
+
+        private final BigInteger base;
+        private final int[] survivors;
+        private final int count;
+        //next survivor to claim
+        private final AtomicInteger cursor = new AtomicInteger();
+        //smallest survivor found prime so far
+        private final AtomicInteger best = new AtomicInteger(Integer.MAX_VALUE);
+
+        Search(BigInteger base, int[] survivors, int count) {
+            this.base = base;
+            this.survivors = survivors;
+            this.count = count;
+        }
+
+        /**
+         * This method returns the candidate at an offset of the window.
+         *
+         * @param k the offset
+         * @return base + 2k
+         */
+        BigInteger candidate(int k) {
+            return base.add(BigInteger.valueOf(2L * k));
+        }
+
+        /**
+         * This method tests survivors until none below the best found is
+         * left unclaimed. Every survivor below the final best is claimed and
+         * tested by some worker, so the result is the smallest prime.
+         */
+        void run() {
+            while (true) {
+                int i = cursor.getAndIncrement();
+                if (i >= count || i > best.get()) {
+                    return;
+                }
+                BigInteger candidate = candidate(survivors[i]);
+                if (candidate.isProbablePrime(CERTAINTY)) {
+                    int current;
+                    while (i < (current = best.get()) && !best.compareAndSet(current, i)) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This class runs a search on the given number of workers, splitting in
+     * half until each task is one worker.
+     */
+    private static class SearchTask extends RecursiveAction {
+
+        private final Search search;
+        private final int workers;
+
+        SearchTask(Search search, int workers) {
+            this.search = search;
+            this.workers = workers;
+        }
+
+        @Override
+        protected void compute() {
+            if (workers > 1) {
+                invokeAll(new SearchTask(search, workers / 2),
+                        new SearchTask(search, workers - workers / 2));
+                return;
+            }
+            search.run();
+        }
+    }
+
+    /**
+     * This class derives b_i = w_i * r mod q for a range of elements,
+     * splitting it in half until the range is small enough to run directly.
+     */
+    private static class DeriveTask extends RecursiveAction {
+
+        private final BigInteger[] w;
+        private final BigInteger[] b;
+        private final BigInteger q;
+        private final BigInteger r;
+        private final int from;
+        private final int to;
+
+        DeriveTask(BigInteger[] w, BigInteger[] b, BigInteger q, BigInteger r, int from, int to) {
+            this.w = w;
+            this.b = b;
+            this.q = q;
+            this.r = r;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DeriveTask(w, b, q, r, from, middle),
+                        new DeriveTask(w, b, q, r, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                b[i] = w[i].multiply(r).mod(q);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class encrypts and decrypts large input on several cores. Blocks are
+ * independent of each other, so the input is read in batches of blocks, each
+ * batch is split across a fork/join pool, and the frames are written in
+ * input order. The output is the same frame format as
+ * {@link KnapsackStreamCipher}, so either class can read what the other
+ * wrote.
+ *
+ * The cipher owns its worker threads, so close it when done, for example
+ * with try-with-resources.
+ *
+ * @author Anshu Anand
+ */
+public class ParallelKnapsackCipher implements AutoCloseable {
+
+    //blocks read per batch for every worker thread
+    private final static int BLOCKS_PER_THREAD = 64;
+    //ranges of at most this many blocks are not split further
+    private final static int SPLIT_THRESHOLD = 8;
+
+    private final MerkleHellmanKnapsackCryptoProject crypto;
+    //writes and reads the frames
+    private final KnapsackStreamCipher frames;
+    private final ForkJoinPool pool;
+    //number of blocks read in one batch
+    private final int batchBlocks;
+
+    /**
+     * This is the constructor for a cipher using every available core.
+     *
+     * @param crypto the key used for every block
+     */
+    public ParallelKnapsackCipher(MerkleHellmanKnapsackCryptoProject crypto) {
+        this(crypto, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This is the constructor for a cipher using the given number of threads.
+     *
+     * @param crypto the key used for every block
+     * @param parallelism the number of worker threads
+     */
+    public ParallelKnapsackCipher(MerkleHellmanKnapsackCryptoProject crypto, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism [" + parallelism + "] is not positive.");
+        }
+        this.crypto = crypto;
+        this.frames = new KnapsackStreamCipher(crypto);
+        this.pool = new ForkJoinPool(parallelism);
+        this.batchBlocks = parallelism * BLOCKS_PER_THREAD;
+    }
+
+    /**
+     * This method returns the number of worker threads.
+     *
+     * @return the parallelism level
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * This method encrypts the whole channel, one batch of blocks at a time.
+     *
+     * @param in the plaintext
+     * @param out receives the ciphertext frames
+     * @return the number of blocks written
+     * @throws IOException if reading or writing fails
+     */
+    public long encrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        ByteBuffer plain = ByteBuffer.allocate(batchBlocks * blockSize);
+        ByteBuffer frame = ByteBuffer.allocate(frames.getMaxFrameLength());
+        BigInteger[] cipher = new BigInteger[batchBlocks];
+        Object event = KnapsackEvents.beginEncrypt();
+        long blocks = 0;
+        long bytes = 0;
+        int read;
+        while ((read = KnapsackStreamCipher.readFully(in, plain)) > 0) {
+            int count = (read + blockSize - 1) / blockSize;
+            pool.invoke(new EncryptTask(plain.array(), read, cipher, 0, count));
+            for (int i = 0; i < count; i++) {
+                int length = Math.min(blockSize, read - i * blockSize);
+                frames.writeFrame(out, frame, length, cipher[i]);
+            }
+            blocks += count;
+            bytes += read;
+        }
+        KnapsackEvents.endEncrypt(event, blocks, crypto.getParameters().getKnapsackLength(), bytes);
+        return blocks;
+    }
+
+    /**
+     * This method decrypts a whole channel of ciphertext frames, one batch of
+     * frames at a time.
+     *
+     * @param in the ciphertext frames
+     * @param out receives the plaintext
+     * @return the number of blocks read
+     * @throws IOException if reading or writing fails, or a frame is corrupt
+     */
+    public long decrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        int blockSize = crypto.getBlockSize();
+        ByteBuffer header = ByteBuffer.allocate(KnapsackStreamCipher.FRAME_HEADER_SIZE);
+        ByteBuffer plain = ByteBuffer.allocate(batchBlocks * blockSize);
+        BigInteger[] cipher = new BigInteger[batchBlocks];
+        int[] lengths = new int[batchBlocks];
+        Object event = KnapsackEvents.beginDecrypt();
+        long blocks = 0;
+        long bytes = 0;
+        boolean more = true;
+        while (more) {
+            int count = 0;
+            while (count < batchBlocks) {
+                int read = KnapsackStreamCipher.readFully(in, header);
+                if (read == 0) {
+                    more = false;
+                    break;
+                }
+                if (read < KnapsackStreamCipher.FRAME_HEADER_SIZE) {
+                    throw new EOFException("The frame header of block [" + (blocks + count) + "] is truncated.");
+                }
+                lengths[count] = frames.readFrame(in, header, blocks + count, cipher, count);
+                count++;
+            }
+            if (count == 0) {
+                break;
+            }
+            pool.invoke(new DecryptTask(cipher, plain.array(), 0, count));
+            for (int i = 0; i < count; i++) {
+                plain.limit(i * blockSize + lengths[i]).position(i * blockSize);
+                KnapsackStreamCipher.writeFully(out, plain);
+                bytes += lengths[i];
+            }
+            plain.clear();
+            blocks += count;
+        }
+        KnapsackEvents.endDecrypt(event, blocks, crypto.getParameters().getKnapsackLength(), bytes);
+        return blocks;
+    }
+
+    /**
+     * This method stops the worker threads. The cipher cannot be used after
+     * it is shut down.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * This method stops the worker threads, as {@link #shutdown()} does.
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    /**
+     * This class encrypts a range of blocks, splitting it in half until the
+     * range is small enough to run directly.
+     */
+    private class EncryptTask extends RecursiveAction {
+
+        private final byte[] plain;
+        private final int length;
+        private final BigInteger[] cipher;
+        private final int from;
+        private final int to;
+
+        EncryptTask(byte[] plain, int length, BigInteger[] cipher, int from, int to) {
+            this.plain = plain;
+            this.length = length;
+            this.cipher = cipher;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EncryptTask(plain, length, cipher, from, middle),
+                        new EncryptTask(plain, length, cipher, middle, to));
+                return;
+            }
+            int blockSize = crypto.getBlockSize();
+            for (int i = from; i < to; i++) {
+                int offset = i * blockSize;
+                cipher[i] = crypto.encryptBlock(plain, offset, Math.min(blockSize, length - offset));
+            }
+        }
+    }
+
+    /**
+     * This class decrypts a range of blocks, splitting it in half until the
+     * range is small enough to run directly.
+     */
+    private class DecryptTask extends RecursiveAction {
+
+        private final BigInteger[] cipher;
+        private final byte[] plain;
+        private final int from;
+        private final int to;
+
+        DecryptTask(BigInteger[] cipher, byte[] plain, int from, int to) {
+            this.cipher = cipher;
+            this.plain = plain;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DecryptTask(cipher, plain, from, middle),
+                        new DecryptTask(cipher, plain, middle, to));
+                return;
+            }
+            int blockSize = crypto.getBlockSize();
+            DecryptionContext context = crypto.getDecryptionContext();
+            DecryptionContext.Scratch scratch = context.newScratch();
+            for (int i = from; i < to; i++) {
+                context.decryptBlock(cipher[i], plain, i * blockSize, scratch);
+            }
+        }
+    }
+}
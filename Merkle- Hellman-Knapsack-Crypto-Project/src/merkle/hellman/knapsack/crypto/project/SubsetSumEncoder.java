@@ -0,0 +1,126 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * This class adds up the elements of the public key b selected by a block,
+ * reading the {@link KnapsackElements} the key stores b in. Every element
+ * takes the same number of 32 bit limbs, wide enough for the sum of all of
+ * b, so a block is summed into one caller owned accumulator and only the
+ * final sum becomes a BigInteger, instead of one BigInteger per addition.
+ *
+ * @author Anshu Anand
+ */
+public class SubsetSumEncoder {
+
+    private final static long MASK = Limbs.MASK;
+
+    //limbs per element and per sum
+    private final int stride;
+    //element i takes limbs i * stride to i * stride + stride - 1
+    private final int[] elements;
+    //number of limbs element i uses, the rest are zero
+    private final int[] lengths;
+    private final int count;
+
+    /**
+     * This is the constructor for the encoder of a public key. The limbs of
+     * b are shared, not copied.
+     *
+     * @param b the public key, stored with a stride wide enough for the sum
+     * of all of its elements
+     */
+    SubsetSumEncoder(KnapsackElements b) {
+        this.stride = b.getStride();
+        this.count = b.size();
+        this.elements = b.getLimbs();
+        this.lengths = b.getLengths();
+    }
+
+    /**
+     * This method creates an accumulator for {@link #encode}.
+     *
+     * @return an accumulator of the sum width
+     */
+    public int[] newAccumulator() {
+        return new int[stride];
+    }
+
+    /**
+     * precondition: length is at most the block size.
+     * postcondition: returns the sum of the elements of b whose bits are set
+     * in the block, element 8j + k being bit k of byte j, most significant
+     * bit first.
+     *
+     * @param block the array holding the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @param length the number of bytes to encrypt
+     * @param sum an accumulator from {@link #newAccumulator()}, overwritten
+     * @return the encrypted number
+     * @comment one limb addition per set bit, so this routine is Big
+     * Theeta(N) at worst
+     */
+    public BigInteger encode(byte[] block, int offset, int length, int[] sum) {
+        for (int k = 0; k < stride; k++) {
+            sum[k] = 0;
+        }
+        for (int j = 0; j < length; j++) {
+            int value = block[offset + j] & 0xff;
+            for (int bit = 0; value != 0; bit++, value = (value << 1) & 0xff) {
+                if ((value & 0x80) != 0) {
+                    add(sum, j * 8 + bit);
+                }
+            }
+        }
+        return Limbs.fromLimbs(sum, stride);
+    }
+
+    /**
+     * This method sums the elements of b selected by bytes of a buffer, as
+     * {@link #encode(byte[], int, int, int[])} does, reading them by
+     * absolute index so a direct buffer is never copied.
+     *
+     * @param buffer the buffer holding the plaintext bytes
+     * @param index the index of the first byte in buffer
+     * @param length the number of bytes to encrypt
+     * @param sum an accumulator from {@link #newAccumulator()}, overwritten
+     * @return the encrypted number
+     */
+    public BigInteger encode(ByteBuffer buffer, int index, int length, int[] sum) {
+        for (int k = 0; k < stride; k++) {
+            sum[k] = 0;
+        }
+        for (int j = 0; j < length; j++) {
+            int value = buffer.get(index + j) & 0xff;
+            for (int bit = 0; value != 0; bit++, value = (value << 1) & 0xff) {
+                if ((value & 0x80) != 0) {
+                    add(sum, j * 8 + bit);
+                }
+            }
+        }
+        return Limbs.fromLimbs(sum, stride);
+    }
+
+    /**
+     * This method adds an element to the sum.
+     *
+     * @param sum the sum, increased in place
+     * @param i the element
+     */
+    private void add(int[] sum, int i) {
+        int base = i * stride;
+        long carry = 0;
+        int length = lengths[i];
+        for (int k = 0; k < length; k++) {
+            long total = (sum[k] & MASK) + (elements[base + k] & MASK) + carry;
+            sum[k] = (int) total;
+            carry = total >>> 32;
+        }
+        for (int k = length; carry != 0 && k < stride; k++) {
+            long total = (sum[k] & MASK) + carry;
+            sum[k] = (int) total;
+            carry = total >>> 32;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package merkle.hellman.knapsack.crypto.project;
+
+/**
+ * This class solves the subset sum of a superincreasing sequence w with the
+ * greedy pass, reading the {@link KnapsackElements} the key stores w in.
+ * Every element takes the same number of 32 bit limbs in one int array, and
+ * the number of limbs it actually uses is kept beside it, so most
+ * comparisons are decided by limb counts alone. The pass writes plaintext
+ * bytes directly and stops as soon as the remainder reaches zero.
+ *
+ * @author Anshu Anand
+ */
+public class SuperincreasingDecoder {
+
+    private final static long MASK = Limbs.MASK;
+
+    //limbs per element and per remainder
+    private final int stride;
+    //element i takes limbs i * stride to i * stride + stride - 1
+    private final int[] elements;
+    //number of limbs element i uses, the rest are zero
+    private final int[] lengths;
+    private final int count;
+
+    /**
+     * This is the constructor for the decoder of a sequence. The limbs of w
+     * are shared, not copied.
+     *
+     * @precondition w is superincreasing and its length is a multiple of 8
+     * @param w the superincreasing sequence, stored with the stride of a
+     * remainder
+     */
+    SuperincreasingDecoder(KnapsackElements w) {
+        this.stride = w.getStride();
+        this.count = w.size();
+        this.elements = w.getLimbs();
+        this.lengths = w.getLengths();
+    }
+
+    /**
+     * This method returns the number of limbs a remainder takes.
+     *
+     * @return the limb count
+     */
+    public int getLimbCount() {
+        return stride;
+    }
+
+    /**
+     * This method returns the number of plaintext bytes in a block.
+     *
+     * @return the block size in bytes
+     */
+    public int getBlockSize() {
+        return count / 8;
+    }
+
+    /**
+     * precondition: block has room for a whole block after offset.
+     * postcondition: the subset of w summing to the remainder is written as
+     * block size bytes, element i being bit i, most significant bit of each
+     * byte first. The remainder is used up.
+     *
+     * @param remainder the sum to decompose as limb count limbs
+     * @param block the array receiving the plaintext bytes
+     * @param offset the position of the first byte in block
+     * @return the number of bytes written, which is the block size
+     * @comment at most N comparisons, each usually decided by limb counts,
+     * so this routine is Big Theeta(N) at worst
+     */
+    public int decode(int[] remainder, byte[] block, int offset) {
+        int top = stride;
+        while (top > 0 && remainder[top - 1] == 0) {
+            top--;
+        }
+        for (int j = count / 8 - 1; j >= 0; j--) {
+            int value = 0;
+            //bit 7 of the window is the least significant bit of the byte
+            for (int bit = 7; bit >= 0 && top > 0; bit--) {
+                int i = j * 8 + bit;
+                if (top > lengths[i] || (top == lengths[i] && compare(remainder, top, i) >= 0)) {
+                    top = subtract(remainder, top, i);
+                    value |= 0x80 >>> bit;
+                }
+            }
+            block[offset + j] = (byte) value;
+        }
+        return count / 8;
+    }
+
+    /**
+     * This method compares the remainder with an element using the same
+     * number of limbs.
+     *
+     * @param remainder the remainder
+     * @param top the number of limbs both use
+     * @param i the element
+     * @return negative, zero or positive as the remainder is below, equal to
+     * or above the element
+     */
+    private int compare(int[] remainder, int top, int i) {
+        int base = i * stride;
+        for (int k = top - 1; k >= 0; k--) {
+            int a = remainder[k];
+            int b = elements[base + k];
+            if (a != b) {
+                return Integer.compareUnsigned(a, b);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This method subtracts an element no larger than the remainder.
+     *
+     * @param remainder the remainder, reduced in place
+     * @param top the number of limbs the remainder uses
+     * @param i the element
+     * @return the number of limbs the reduced remainder uses
+     */
+    private int subtract(int[] remainder, int top, int i) {
+        int base = i * stride;
+        long borrow = 0;
+        int length = lengths[i];
+        for (int k = 0; k < length; k++) {
+            long difference = (remainder[k] & MASK) - (elements[base + k] & MASK) - borrow;
+            remainder[k] = (int) difference;
+            borrow = difference >>> 63;
+        }
+        for (int k = length; borrow != 0 && k < top; k++) {
+            long difference = (remainder[k] & MASK) - borrow;
+            remainder[k] = (int) difference;
+            borrow = difference >>> 63;
+        }
+        while (top > 0 && remainder[top - 1] == 0) {
+            top--;
+        }
+        return top;
+    }
+}
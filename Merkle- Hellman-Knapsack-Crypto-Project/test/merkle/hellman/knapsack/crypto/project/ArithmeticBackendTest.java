@@ -0,0 +1,96 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class cross checks the Montgomery backend against BigInteger
+ * multiply and mod, on the multiplier alone and on whole keys.
+ *
+ * @author Anshu Anand
+ */
+public class ArithmeticBackendTest {
+
+    //modulus sizes in bits, around limb boundaries and up to large keys
+    private final static int[] MODULUS_BITS = {2, 31, 32, 33, 63, 64, 65, 100, 660, 2070, 8200};
+
+    /**
+     * This method checks both backends against factor * c mod modulus on
+     * random inputs and on the ends of the input range, through the
+     * BigInteger and the limb form of multiply.
+     */
+    @Test
+    public void backendsAgreeWithBigInteger() {
+        Random random = new Random(7);
+        for (int bits : MODULUS_BITS) {
+            BigInteger modulus = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+            BigInteger factor = new BigInteger(bits + 8, random).mod(modulus);
+            //ciphertexts are below 2^32 times the modulus
+            BigInteger bound = modulus.shiftLeft(32);
+            BigInteger[] inputs = new BigInteger[40];
+            inputs[0] = BigInteger.ZERO;
+            inputs[1] = BigInteger.ONE;
+            inputs[2] = modulus.subtract(BigInteger.ONE);
+            inputs[3] = modulus;
+            inputs[4] = bound.subtract(BigInteger.ONE);
+            for (int i = 5; i < inputs.length; i++) {
+                inputs[i] = new BigInteger(bits + 32, random).mod(bound);
+            }
+            for (ArithmeticBackend backend : ArithmeticBackend.values()) {
+                ModularMultiplier multiplier = backend.create(factor, modulus);
+                int[] result = new int[Limbs.count(modulus)];
+                int[] scratch = multiplier.newScratch();
+                for (BigInteger input : inputs) {
+                    BigInteger expected = factor.multiply(input).mod(modulus);
+                    String message = backend + ", " + bits + " bits, input " + input;
+                    assertEquals(message, expected, multiplier.multiply(input));
+                    Arrays.fill(result, -1);
+                    multiplier.multiply(input, result, scratch);
+                    assertEquals(message, expected, Limbs.fromLimbs(result, result.length));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks that the same key decrypts every ciphertext to the
+     * same block with either backend.
+     */
+    @Test
+    public void keysDecryptAlikeWithEitherBackend() {
+        Random random = new Random(8);
+        for (int size : new int[]{8, 64, 640}) {
+            MerkleHellmanKnapsackCryptoProject plain = new MerkleHellmanKnapsackCryptoProject(parameters(size, ArithmeticBackend.BIG_INTEGER));
+            MerkleHellmanKnapsackCryptoProject montgomery = new MerkleHellmanKnapsackCryptoProject(parameters(size, ArithmeticBackend.MONTGOMERY),
+                    plain.getW(), plain.getQ(), plain.getR(), plain.getB());
+            int blockSize = plain.getBlockSize();
+            for (int i = 0; i < 50; i++) {
+                byte[] data = new byte[random.nextInt(blockSize + 1)];
+                random.nextBytes(data);
+                BigInteger encrypted = plain.encryptBlock(data, 0, data.length);
+                assertEquals(encrypted, montgomery.encryptBlock(data, 0, data.length));
+                byte[] expected = new byte[blockSize];
+                plain.decryptBlock(encrypted, expected, 0);
+                byte[] actual = new byte[blockSize];
+                montgomery.decryptBlock(encrypted, actual, 0);
+                assertArrayEquals(expected, actual);
+                assertArrayEquals(data, Arrays.copyOf(actual, data.length));
+            }
+        }
+    }
+
+    /**
+     * This method returns the parameters of a key.
+     *
+     * @param size the knapsack length
+     * @param arithmetic the decryption backend
+     * @return the parameters
+     */
+    private static KnapsackParameters parameters(int size, ArithmeticBackend arithmetic) {
+        return new KnapsackParameters.Builder().knapsackLength(size).arithmetic(arithmetic).build();
+    }
+}
@@ -0,0 +1,241 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class checks that messages written by CiphertextFormat decrypt to
+ * their plaintext at lengths around the block size, from byte arrays and
+ * from heap and direct buffers, and that damaged messages are refused.
+ *
+ * @author Anshu Anand
+ */
+public class CiphertextFormatTest {
+
+    //a small key with one byte varints and a large one with two byte varints
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[]{
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false)),
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(1280, true))
+        };
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks that every encrypt form writes the same message
+     * within the bound, and every decrypt form reads the plaintext back.
+     */
+    @Test
+    public void roundTripsAroundTheBlockSize() {
+        Random random = new Random(5);
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            for (int length : lengths(crypto.getBlockSize())) {
+                byte[] data = new byte[length];
+                random.nextBytes(data);
+                String message = crypto.getParameters() + ", " + length + " bytes";
+                byte[] encoded = encode(crypto, data);
+                assertTrue(message, encoded.length <= CiphertextFormat.getMaxEncodedLength(crypto, length));
+                assertEquals(message, crypto.getKeyId(), CiphertextFormat.readKeyId(ByteBuffer.wrap(encoded)));
+                for (boolean direct : new boolean[]{false, true}) {
+                    ByteBuffer in = copy(data, direct);
+                    ByteBuffer out = allocate((int) CiphertextFormat.getMaxEncodedLength(crypto, length), direct);
+                    int blocks = CiphertextFormat.encrypt(crypto, in, out);
+                    assertEquals(message, (length + crypto.getBlockSize() - 1) / crypto.getBlockSize(), blocks);
+                    assertFalse(message, in.hasRemaining());
+                    assertArrayEquals(message, encoded, written(out));
+                    out = allocate((int) CiphertextFormat.getMaxEncodedLength(crypto, length), direct);
+                    CiphertextFormat.encrypt(crypto, new EncryptionCache(16), copy(data, direct), out);
+                    assertArrayEquals(message, encoded, written(out));
+
+                    in = copy(encoded, direct);
+                    assertArrayEquals(message, data, CiphertextFormat.decrypt(crypto, in));
+                    assertFalse(message, in.hasRemaining());
+                    in = copy(encoded, direct);
+                    //exactly the plaintext length, so the last block goes through the scratch block
+                    ByteBuffer plain = allocate(length, direct);
+                    assertEquals(message, length, CiphertextFormat.decrypt(crypto, in, plain));
+                    assertFalse(message, in.hasRemaining());
+                    assertArrayEquals(message, data, written(plain));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks that a message is decrypted at the buffer's
+     * position and leaves the bytes after it alone.
+     */
+    @Test
+    public void decryptsBetweenOtherBytes() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        byte[] data = new byte[3 * crypto.getBlockSize() + 1];
+        new Random(6).nextBytes(data);
+        byte[] encoded = encode(crypto, data);
+        ByteBuffer in = ByteBuffer.allocate(encoded.length + 9);
+        in.position(4);
+        in.put(encoded).put((byte) 7);
+        in.flip();
+        in.position(4);
+        assertArrayEquals(data, CiphertextFormat.decrypt(crypto, in));
+        assertEquals(encoded.length + 4, in.position());
+        assertEquals(7, in.get());
+    }
+
+    /**
+     * This method checks that a message is refused by another key.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesAnotherKey() {
+        CiphertextFormat.decrypt(keys[1], ByteBuffer.wrap(encode(keys[0], new byte[5])));
+    }
+
+    /**
+     * This method checks that every prefix of a message is refused as
+     * truncated, with both decrypt forms.
+     */
+    @Test
+    public void refusesTruncatedMessages() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            byte[] data = new byte[2 * crypto.getBlockSize() + 1];
+            new Random(7).nextBytes(data);
+            byte[] encoded = encode(crypto, data);
+            for (int cut = 0; cut < encoded.length; cut++) {
+                assertRefused(crypto, Arrays.copyOf(encoded, cut));
+            }
+        }
+    }
+
+    /**
+     * This method checks that a message with a bad magic, version, block
+     * count or block length is refused.
+     */
+    @Test
+    public void refusesCorruptMessages() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        byte[] encoded = encode(crypto, new byte[crypto.getBlockSize()]);
+        byte[] corrupt = encoded.clone();
+        corrupt[0] ^= 1;
+        assertRefused(crypto, corrupt);
+        corrupt = encoded.clone();
+        corrupt[5] = 2;
+        assertRefused(crypto, corrupt);
+        corrupt = encoded.clone();
+        ByteBuffer.wrap(corrupt).putInt(CiphertextFormat.HEADER_SIZE - 4, -1);
+        assertRefused(crypto, corrupt);
+        corrupt = encoded.clone();
+        ByteBuffer.wrap(corrupt).putInt(CiphertextFormat.HEADER_SIZE - 4, 2);
+        assertRefused(crypto, corrupt);
+        //the plaintext length of the block, one more than the block size
+        corrupt = encoded.clone();
+        corrupt[CiphertextFormat.HEADER_SIZE] = (byte) (crypto.getBlockSize() + 1);
+        assertRefused(crypto, corrupt);
+        //the magnitude length of the block, one more than the largest
+        corrupt = encoded.clone();
+        corrupt[CiphertextFormat.HEADER_SIZE + 1] = (byte) (crypto.getMaxCipherLength() + 1);
+        assertRefused(crypto, corrupt);
+    }
+
+    /**
+     * This method returns the plaintext lengths to check: empty, around one
+     * and two blocks, and many blocks.
+     *
+     * @param blockSize the block size of the key
+     * @return the lengths
+     */
+    private static int[] lengths(int blockSize) {
+        return new int[]{0, 1, blockSize - 1, blockSize, blockSize + 1, 2 * blockSize, 200 * blockSize + 3};
+    }
+
+    /**
+     * This method encrypts bytes into a message through the byte array form.
+     *
+     * @param crypto the key
+     * @param data the plaintext
+     * @return the message
+     */
+    private static byte[] encode(MerkleHellmanKnapsackCryptoProject crypto, byte[] data) {
+        ByteBuffer out = ByteBuffer.allocate((int) CiphertextFormat.getMaxEncodedLength(crypto, data.length));
+        CiphertextFormat.encrypt(crypto, data, 0, data.length, out);
+        return written(out);
+    }
+
+    /**
+     * This method checks that both decrypt forms refuse a message.
+     *
+     * @param crypto the key
+     * @param encoded the damaged message
+     */
+    private static void assertRefused(MerkleHellmanKnapsackCryptoProject crypto, byte[] encoded) {
+        try {
+            CiphertextFormat.decrypt(crypto, ByteBuffer.wrap(encoded));
+            fail("A message of " + encoded.length + " bytes was decrypted.");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            CiphertextFormat.decrypt(crypto, ByteBuffer.wrap(encoded), ByteBuffer.allocateDirect(4 * crypto.getBlockSize()));
+            fail("A message of " + encoded.length + " bytes was decrypted.");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * This method returns a buffer of the given capacity.
+     *
+     * @param capacity the capacity in bytes
+     * @param direct true for a direct buffer
+     * @return the buffer
+     */
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * This method returns a buffer holding a copy of bytes, between position
+     * and limit.
+     *
+     * @param bytes the bytes to copy
+     * @param direct true for a direct buffer
+     * @return the buffer
+     */
+    private static ByteBuffer copy(byte[] bytes, boolean direct) {
+        ByteBuffer buffer = allocate(bytes.length, direct);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This method returns the bytes before the position of a buffer.
+     *
+     * @param buffer the buffer written to
+     * @return the bytes written
+     */
+    private static byte[] written(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,203 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class checks that EncryptionCache answers repeated blocks with the
+ * number encryptBlock returns, stays within its capacity, and never answers
+ * a block with the number of another key.
+ *
+ * @author Anshu Anand
+ */
+public class EncryptionCacheTest {
+
+    //two keys of the same block size
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[]{
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false)),
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false))
+        };
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks that a block is a miss the first time and a hit
+     * after, through the array, heap buffer and direct buffer forms, at any
+     * offset.
+     */
+    @Test
+    public void answersRepeatedBlocks() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        EncryptionCache cache = new EncryptionCache(64);
+        byte[] around = randomBytes(crypto.getBlockSize() + 4, 1);
+        int length = crypto.getBlockSize();
+        BigInteger expected = crypto.encryptBlock(around, 2, length);
+
+        assertEquals(expected, cache.encryptBlock(crypto, around, 2, length));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.size());
+        assertEquals(expected, cache.encryptBlock(crypto, around, 2, length));
+        assertEquals(expected, cache.encryptBlock(crypto, ByteBuffer.wrap(around), 2, length));
+        ByteBuffer direct = ByteBuffer.allocateDirect(around.length);
+        direct.put(around);
+        assertEquals(expected, cache.encryptBlock(crypto, direct, 2, length));
+        assertEquals(around.length, direct.position());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        //a shorter block of the same bytes is another block
+        assertEquals(crypto.encryptBlock(around, 2, length - 1), cache.encryptBlock(crypto, around, 2, length - 1));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(crypto.encryptData("abc"), cache.encryptData(crypto, "abc"));
+        assertEquals(crypto.encryptData("abc"), cache.encryptData(crypto, "abc"));
+        assertEquals(4, cache.getHitCount());
+        assertEquals(3, cache.size());
+
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals(expected, cache.encryptBlock(crypto, around, 2, length));
+        assertEquals(4, cache.getMissCount());
+    }
+
+    /**
+     * This method checks that the cache keeps no more than its capacity,
+     * rounded up to whole segments, counts every block it drops, and still
+     * answers correctly after dropping.
+     */
+    @Test
+    public void staysWithinCapacity() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        //one block per segment
+        EncryptionCache cache = new EncryptionCache(16);
+        Random random = new Random(2);
+        byte[][] blocks = new byte[200][crypto.getBlockSize()];
+        for (byte[] block : blocks) {
+            random.nextBytes(block);
+            cache.encryptBlock(crypto, block, 0, block.length);
+            assertTrue(cache.size() <= 16);
+        }
+        assertEquals(200, cache.getMissCount());
+        assertEquals(200 - cache.size(), cache.getEvictionCount());
+        for (byte[] block : blocks) {
+            assertEquals(crypto.encryptBlock(block, 0, block.length), cache.encryptBlock(crypto, block, 0, block.length));
+        }
+        assertEquals(400, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.getHitCount() <= 16);
+    }
+
+    /**
+     * This method checks that a block of another key drops the entries of
+     * the old key and is encrypted with the new one.
+     */
+    @Test
+    public void anotherKeyEmptiesTheCache() {
+        EncryptionCache cache = new EncryptionCache(64);
+        byte[] first = randomBytes(keys[0].getBlockSize(), 3);
+        byte[] second = randomBytes(keys[0].getBlockSize(), 4);
+        cache.encryptBlock(keys[0], first, 0, first.length);
+        cache.encryptBlock(keys[0], second, 0, second.length);
+        assertEquals(2, cache.size());
+
+        assertEquals(keys[1].encryptBlock(first, 0, first.length), cache.encryptBlock(keys[1], first, 0, first.length));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(keys[0].encryptBlock(first, 0, first.length), cache.encryptBlock(keys[0], first, 0, first.length));
+        assertEquals(4, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * This method checks that threads switching between two keys on one
+     * cache always get the number of the key they asked for.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    public void neverAnswersWithAnotherKey() throws Exception {
+        final EncryptionCache cache = new EncryptionCache(32);
+        final byte[][] blocks = new byte[8][];
+        final BigInteger[][] expected = new BigInteger[keys.length][blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = randomBytes(keys[0].getBlockSize(), 10 + i);
+            for (int k = 0; k < keys.length; k++) {
+                expected[k][i] = keys[k].encryptBlock(blocks[i], 0, blocks[i].length);
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> workers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                workers.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        Random random = new Random(seed);
+                        int wrong = 0;
+                        for (int j = 0; j < 2000; j++) {
+                            int k = random.nextInt(keys.length);
+                            int i = random.nextInt(blocks.length);
+                            if (!expected[k][i].equals(cache.encryptBlock(keys[k], blocks[i], 0, blocks[i].length))) {
+                                wrong++;
+                            }
+                        }
+                        return wrong;
+                    }
+                }));
+            }
+            for (Future<Integer> worker : workers) {
+                assertEquals(Integer.valueOf(0), worker.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(8000, cache.getHitCount() + cache.getMissCount());
+    }
+
+    /**
+     * This method checks that a cache of no blocks is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesZeroCapacity() {
+        new EncryptionCache(0);
+    }
+
+    /**
+     * This method returns random bytes.
+     *
+     * @param length the number of bytes
+     * @param seed the seed of the bytes
+     * @return the bytes
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
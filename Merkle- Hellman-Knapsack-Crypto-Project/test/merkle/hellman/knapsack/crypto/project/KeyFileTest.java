@@ -0,0 +1,184 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * This class checks that a key file loads back the key it was saved from,
+ * whole or public only, and that saving replaces a file without leaving
+ * anything behind.
+ *
+ * @author Anshu Anand
+ */
+public class KeyFileTest {
+
+    //a key with the precomputed table and one without
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    //holds the key files of one test
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[]{
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false)),
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(640, true))
+        };
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks that a saved key loads back with the same
+     * parameters and id, and decrypts what the original encrypted.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    @Test
+    public void loadsTheSavedKey() throws IOException {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            Path path = folder.newFolder().toPath().resolve("key");
+            KeyFile.save(crypto, path);
+            MerkleHellmanKnapsackCryptoProject loaded = KeyFile.load(path);
+            assertTrue(loaded.hasPrivateKey());
+            assertEquals(crypto.getKeyId(), loaded.getKeyId());
+            assertEquals(crypto.getParameters().toString(), loaded.getParameters().toString());
+            assertEquals(crypto.getQ(), loaded.getQ());
+            assertEquals(crypto.getR(), loaded.getR());
+            assertArrayEquals(crypto.getB(), loaded.getB());
+            byte[] data = randomBlock(crypto, 3);
+            BigInteger encrypted = crypto.encryptBlock(data, 0, data.length);
+            assertEquals(encrypted, loaded.encryptBlock(data, 0, data.length));
+            byte[] plain = new byte[crypto.getBlockSize()];
+            loaded.decryptBlock(encrypted, plain, 0);
+            assertArrayEquals(data, plain);
+        }
+    }
+
+    /**
+     * This method checks that the public loads of a whole or a public key
+     * file encrypt like the original and hold no private part.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    @Test
+    public void loadsOnlyThePublicPart() throws IOException {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[1];
+        Path whole = folder.getRoot().toPath().resolve("whole");
+        KeyFile.save(crypto, whole);
+        Path half = folder.getRoot().toPath().resolve("public");
+        KeyFile.savePublic(crypto, half);
+        assertTrue(Files.size(half) < Files.size(whole));
+        byte[] data = randomBlock(crypto, 4);
+        BigInteger encrypted = crypto.encryptBlock(data, 0, data.length);
+        for (Path path : new Path[]{whole, half}) {
+            MerkleHellmanKnapsackCryptoProject loaded = KeyFile.loadPublic(path);
+            assertFalse(loaded.hasPrivateKey());
+            assertEquals(crypto.getKeyId(), loaded.getKeyId());
+            assertEquals(encrypted, loaded.encryptBlock(data, 0, data.length));
+            KnapsackPublicKey publicKey = KeyFile.loadPublicKey(path);
+            assertEquals(crypto.getKeyId(), publicKey.getKeyId());
+            assertEquals(encrypted, publicKey.encryptBlock(data, 0, data.length));
+        }
+    }
+
+    /**
+     * This method checks that a public key file cannot be loaded as a key
+     * pair.
+     *
+     * @throws IOException if the key file holds no private part
+     */
+    @Test(expected = IOException.class)
+    public void refusesToLoadAPublicFileWhole() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("public");
+        KeyFile.savePublic(keys[0], path);
+        KeyFile.load(path);
+    }
+
+    /**
+     * This method checks that a public key cannot decrypt.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    @Test(expected = IllegalStateException.class)
+    public void publicKeysCannotDecrypt() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("public");
+        KeyFile.savePublic(keys[0], path);
+        KeyFile.loadPublic(path).getPrivateKey();
+    }
+
+    /**
+     * This method checks that a key without its private part is not saved
+     * as a key pair.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesToSaveAPublicKeyWhole() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("public");
+        KeyFile.savePublic(keys[0], path);
+        KeyFile.save(KeyFile.loadPublic(path), folder.getRoot().toPath().resolve("whole"));
+    }
+
+    /**
+     * This method checks that saving over an existing file replaces it,
+     * leaves no temporary file in the directory and, on POSIX systems, makes
+     * the private key readable by its owner only.
+     *
+     * @throws IOException if the key file cannot be written or read
+     */
+    @Test
+    public void replacesTheFileInPlace() throws IOException {
+        File directory = folder.newFolder();
+        Path path = directory.toPath().resolve("key");
+        KeyFile.save(keys[1], path);
+        KeyFile.save(keys[0], path);
+        assertEquals(keys[0].getKeyId(), KeyFile.load(path).getKeyId());
+        assertEquals(Arrays.asList("key"), Arrays.asList(directory.list()));
+        assumeTrue(Files.getFileAttributeView(path, PosixFileAttributeView.class) != null);
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(path)));
+        Path half = directory.toPath().resolve("public");
+        KeyFile.savePublic(keys[0], half);
+        assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(half)));
+    }
+
+    /**
+     * This method returns a block of random bytes as long as the block size.
+     *
+     * @param crypto the key
+     * @param seed the seed of the bytes
+     * @return the block
+     */
+    private static byte[] randomBlock(MerkleHellmanKnapsackCryptoProject crypto, long seed) {
+        byte[] data = new byte[crypto.getBlockSize()];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,210 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * This class checks that KnapsackEngine encrypts with the current key,
+ * still decrypts messages of the key it replaced, refuses older ones, and
+ * empties its cache on rotation.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackEngineTest {
+
+    //keys the engine rotates through
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false));
+        }
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks that after a rotation messages of the previous and
+     * the current key decrypt, and after a second one the oldest message is
+     * refused.
+     */
+    @Test
+    public void decryptsThePreviousKeyOnly() {
+        KnapsackEngine engine = new KnapsackEngine(keys[0]);
+        byte[] data = randomBytes(3 * keys[0].getBlockSize() + 2, 1);
+        byte[] first = encrypt(engine, data);
+        assertEquals(keys[0].getKeyId(), CiphertextFormat.readKeyId(ByteBuffer.wrap(first)));
+
+        assertSame(keys[0], engine.rotate(keys[1]));
+        assertSame(keys[1], engine.getKey());
+        assertEquals(1, engine.getRotationCount());
+        byte[] second = encrypt(engine, data);
+        assertEquals(keys[1].getKeyId(), CiphertextFormat.readKeyId(ByteBuffer.wrap(second)));
+        assertArrayEquals(data, engine.decrypt(ByteBuffer.wrap(first)));
+        assertArrayEquals(data, engine.decrypt(ByteBuffer.wrap(second)));
+
+        assertSame(keys[1], engine.rotate(keys[2]));
+        assertEquals(2, engine.getRotationCount());
+        byte[] third = encrypt(engine, data);
+        assertArrayEquals(data, engine.decrypt(ByteBuffer.wrap(second)));
+        assertArrayEquals(data, engine.decrypt(ByteBuffer.wrap(third)));
+        try {
+            engine.decrypt(ByteBuffer.wrap(first));
+            fail("A message of the key two rotations ago was decrypted.");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * This method checks that the cache answers repeated blocks until a
+     * rotation empties it, and that blocks after the rotation are encrypted
+     * with the new key.
+     */
+    @Test
+    public void rotationEmptiesTheCache() {
+        EncryptionCache cache = new EncryptionCache(64);
+        KnapsackEngine engine = new KnapsackEngine(keys[0], cache);
+        byte[] data = randomBytes(4 * keys[0].getBlockSize(), 2);
+        byte[] first = encrypt(engine, data);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(4, cache.size());
+        //the same blocks again, through the direct buffer path
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(data);
+        in.flip();
+        ByteBuffer out = ByteBuffer.allocate((int) engine.getMaxEncodedLength(data.length));
+        engine.encrypt(in, out);
+        assertEquals(4, cache.getHitCount());
+        assertArrayEquals(first, written(out));
+
+        engine.rotate(keys[1]);
+        assertEquals(0, cache.size());
+        byte[] second = encrypt(engine, data);
+        assertEquals(4, cache.getHitCount());
+        assertEquals(8, cache.getMissCount());
+        assertEquals(keys[1].getKeyId(), CiphertextFormat.readKeyId(ByteBuffer.wrap(second)));
+        assertArrayEquals(data, CiphertextFormat.decrypt(keys[1], ByteBuffer.wrap(second)));
+        assertArrayEquals(data, engine.decrypt(ByteBuffer.wrap(first)));
+    }
+
+    /**
+     * This method checks that messages encrypted while another thread
+     * rotates are each wholly under one key: every message decrypts with the
+     * key its id names.
+     *
+     * @throws Exception if a worker fails
+     */
+    @Test
+    public void messagesNeverMixKeys() throws Exception {
+        final KnapsackEngine engine = new KnapsackEngine(keys[0], new EncryptionCache(16));
+        final byte[] data = randomBytes(40 * keys[0].getBlockSize(), 3);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<List<byte[]>>> workers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                workers.add(pool.submit(new Callable<List<byte[]>>() {
+                    @Override
+                    public List<byte[]> call() {
+                        List<byte[]> messages = new ArrayList<>();
+                        for (int j = 0; j < 40; j++) {
+                            messages.add(encrypt(engine, data));
+                        }
+                        return messages;
+                    }
+                }));
+            }
+            for (int i = 1; i < 40; i++) {
+                engine.rotate(keys[i % keys.length]);
+                Thread.yield();
+            }
+            for (Future<List<byte[]>> worker : workers) {
+                for (byte[] message : worker.get()) {
+                    long id = CiphertextFormat.readKeyId(ByteBuffer.wrap(message));
+                    assertArrayEquals(data, CiphertextFormat.decrypt(keyOf(id), ByteBuffer.wrap(message)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(39, engine.getRotationCount());
+        assertSame(keys[39 % keys.length], engine.getKey());
+    }
+
+    /**
+     * This method encrypts bytes into a message with the engine.
+     *
+     * @param engine the engine
+     * @param data the plaintext
+     * @return the message
+     */
+    private static byte[] encrypt(KnapsackEngine engine, byte[] data) {
+        ByteBuffer out = ByteBuffer.allocate((int) engine.getMaxEncodedLength(data.length));
+        engine.encrypt(data, 0, data.length, out);
+        return written(out);
+    }
+
+    /**
+     * This method returns the bytes before the position of a buffer.
+     *
+     * @param buffer the buffer written to
+     * @return the bytes written
+     */
+    private static byte[] written(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * This method returns the test key of a key id.
+     *
+     * @param id the key id
+     * @return the key
+     */
+    private static MerkleHellmanKnapsackCryptoProject keyOf(long id) {
+        for (MerkleHellmanKnapsackCryptoProject key : keys) {
+            if (key.getKeyId() == id) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("The key id [" + Long.toHexString(id) + "] is not a test key.");
+    }
+
+    /**
+     * This method returns random bytes.
+     *
+     * @param length the number of bytes
+     * @param seed the seed of the bytes
+     * @return the bytes
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,217 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * This class checks that KnapsackFileCipher writes the frames of
+ * KnapsackStreamCipher and reads them back, with regions and output small
+ * enough that files of a few blocks cross their ends.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackFileCipherTest {
+
+    //a key with short frames and one with long frames
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    //holds the files of one test
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[]{
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false)),
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(640, true))
+        };
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks files around the block size and around the region
+     * ends, with regions and output from one largest frame upwards.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void roundTripsAcrossRegionsAndFrames() throws IOException {
+        Random random = new Random(9);
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            int blockSize = crypto.getBlockSize();
+            int maxFrameLength = new KnapsackStreamCipher(crypto).getMaxFrameLength();
+            int[][] sizes = {
+                {maxFrameLength, maxFrameLength},
+                {maxFrameLength + 1, 2 * maxFrameLength - 1},
+                {3 * maxFrameLength + 5, maxFrameLength + 3},
+                {7 * blockSize + maxFrameLength, 5 * maxFrameLength}
+            };
+            for (int[] size : sizes) {
+                KnapsackFileCipher cipher = new KnapsackFileCipher(crypto, size[0], size[1]);
+                for (int length : lengths(blockSize, size[0])) {
+                    byte[] data = new byte[length];
+                    random.nextBytes(data);
+                    String message = crypto.getParameters() + ", region " + size[0] + ", output " + size[1] + ", " + length + " bytes";
+                    Path source = write(data);
+                    Path frames = folder.newFile().toPath();
+                    assertEquals(message, (length + blockSize - 1) / blockSize, cipher.encrypt(source, frames));
+                    assertArrayEquals(message, streamFrames(crypto, data), Files.readAllBytes(frames));
+                    Path plain = folder.newFile().toPath();
+                    assertEquals(message, (length + blockSize - 1) / blockSize, cipher.decrypt(frames, plain));
+                    assertArrayEquals(message, data, Files.readAllBytes(plain));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks that the default cipher reads back what the small
+     * one wrote, and replaces a longer file already at the target.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void readsFramesOfAnyRegionSize() throws IOException {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        byte[] data = new byte[50 * crypto.getBlockSize() + 3];
+        new Random(10).nextBytes(data);
+        Path frames = folder.newFile().toPath();
+        new KnapsackFileCipher(crypto, 40, 40).encrypt(write(data), frames);
+        Path plain = write(new byte[2 * data.length]);
+        new KnapsackFileCipher(crypto).decrypt(frames, plain);
+        assertArrayEquals(data, Files.readAllBytes(plain));
+    }
+
+    /**
+     * This method checks that a file of frames cut anywhere but at a frame
+     * end is refused as truncated, and that a cut at a frame end decrypts
+     * the frames before it.
+     *
+     * @throws IOException if a file cannot be written or read
+     */
+    @Test
+    public void refusesTruncatedFiles() throws IOException {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        int maxFrameLength = new KnapsackStreamCipher(crypto).getMaxFrameLength();
+        KnapsackFileCipher cipher = new KnapsackFileCipher(crypto, maxFrameLength + 3, maxFrameLength);
+        byte[] data = new byte[3 * crypto.getBlockSize()];
+        new Random(11).nextBytes(data);
+        byte[] frames = streamFrames(crypto, data);
+        int frameEnd = 0;
+        int blocks = 0;
+        for (int cut = 1; cut < frames.length; cut++) {
+            Path source = write(Arrays.copyOf(frames, cut));
+            if (cut == frameEnd + frameLength(frames, frameEnd)) {
+                frameEnd = cut;
+                blocks++;
+                assertEquals(blocks, cipher.decrypt(source, folder.newFile().toPath()));
+                continue;
+            }
+            try {
+                cipher.decrypt(source, folder.newFile().toPath());
+                fail("A file of " + cut + " bytes was decrypted.");
+            } catch (EOFException e) {
+            }
+        }
+    }
+
+    /**
+     * This method checks that a frame with a length over the block size is
+     * refused.
+     *
+     * @throws IOException if the frame is corrupt
+     */
+    @Test(expected = IOException.class)
+    public void refusesCorruptFrames() throws IOException {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        byte[] frames = streamFrames(crypto, new byte[2 * crypto.getBlockSize()]);
+        frames[3] = (byte) (crypto.getBlockSize() + 1);
+        new KnapsackFileCipher(crypto, 64, 64).decrypt(write(frames), folder.newFile().toPath());
+    }
+
+    /**
+     * This method checks that a region that cannot hold the largest frame
+     * is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesRegionsUnderOneFrame() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        new KnapsackFileCipher(crypto, new KnapsackStreamCipher(crypto).getMaxFrameLength() - 1, 1024);
+    }
+
+    /**
+     * This method returns the file lengths to check: empty, around one and
+     * two blocks, and around one and two regions.
+     *
+     * @param blockSize the block size of the key
+     * @param regionSize the bytes mapped at a time
+     * @return the lengths
+     */
+    private static int[] lengths(int blockSize, int regionSize) {
+        return new int[]{0, 1, blockSize - 1, blockSize, blockSize + 1, 2 * blockSize,
+            regionSize - 1, regionSize, regionSize + 1, 2 * regionSize + blockSize - 1, 20 * regionSize + 1};
+    }
+
+    /**
+     * This method returns the frames KnapsackStreamCipher writes for bytes.
+     *
+     * @param crypto the key
+     * @param data the plaintext
+     * @return the frames
+     * @throws IOException never, the streams are in memory
+     */
+    private static byte[] streamFrames(MerkleHellmanKnapsackCryptoProject crypto, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new KnapsackStreamCipher(crypto).encrypt(new ByteArrayInputStream(data), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    /**
+     * This method returns the length of the frame at an offset, header
+     * included.
+     *
+     * @param frames the frames
+     * @param start the offset of the frame
+     * @return the frame length in bytes
+     */
+    private static int frameLength(byte[] frames, int start) {
+        return KnapsackStreamCipher.FRAME_HEADER_SIZE + ByteBuffer.wrap(frames).getInt(start + 4);
+    }
+
+    /**
+     * This method writes bytes to a new file of the folder.
+     *
+     * @param data the bytes
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    private Path write(byte[] data) throws IOException {
+        return Files.write(folder.newFile().toPath(), data);
+    }
+}
@@ -0,0 +1,177 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class checks that KnapsackKeyring decrypts messages of every key it
+ * rotated through, keeping at most its capacity of old keys on the heap and
+ * loading evicted ones back from their files.
+ *
+ * @author Anshu Anand
+ */
+public class KnapsackKeyringTest {
+
+    //keys the keyring rotates through, and one it never holds
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    //holds the keyring directory of one test
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false));
+        }
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method rotates three keys through a keyring of capacity one and
+     * checks the counters as messages of each key are decrypted: the current
+     * and the cached key are hits, an evicted key is loaded from its file
+     * and evicts the cached one.
+     *
+     * @throws IOException if a key file cannot be written or read
+     */
+    @Test
+    public void evictsAndReloadsOldKeys() throws IOException {
+        KnapsackKeyring keyring = new KnapsackKeyring(folder.getRoot().toPath().resolve("keys"), 1);
+        byte[] data = randomBytes(2 * keys[0].getBlockSize() + 1, 1);
+        byte[][] messages = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            assertEquals(keys[i].getKeyId(), keyring.rotate(keys[i]));
+            assertSame(keys[i], keyring.getCurrent());
+            messages[i] = encrypt(keyring, data);
+            assertEquals(keys[i].getKeyId(), CiphertextFormat.readKeyId(ByteBuffer.wrap(messages[i])));
+        }
+        //the first key was pushed out by the second
+        assertEquals(1, keyring.getCachedCount());
+        assertEquals(1, keyring.getEvictionCount());
+        assertEquals(0, keyring.getLoadCount());
+
+        assertArrayEquals(data, keyring.decrypt(ByteBuffer.wrap(messages[2])));
+        assertArrayEquals(data, keyring.decrypt(ByteBuffer.wrap(messages[1])));
+        assertEquals(2, keyring.getHitCount());
+        assertEquals(0, keyring.getLoadCount());
+
+        assertArrayEquals(data, keyring.decrypt(ByteBuffer.wrap(messages[0])));
+        assertEquals(1, keyring.getLoadCount());
+        assertEquals(2, keyring.getEvictionCount());
+        assertEquals(1, keyring.getCachedCount());
+        assertArrayEquals(data, keyring.decrypt(ByteBuffer.wrap(messages[0])));
+        assertEquals(3, keyring.getHitCount());
+        assertEquals(1, keyring.getLoadCount());
+
+        assertArrayEquals(data, keyring.decrypt(ByteBuffer.wrap(messages[1])));
+        assertEquals(2, keyring.getLoadCount());
+        assertEquals(3, keyring.getEvictionCount());
+        assertEquals(1, keyring.getCachedCount());
+        assertSame(keys[2], keyring.get(keys[2].getKeyId()));
+    }
+
+    /**
+     * This method checks that a new keyring on the same directory decrypts
+     * messages of the keys saved by an earlier one.
+     *
+     * @throws IOException if a key file cannot be written or read
+     */
+    @Test
+    public void reloadsKeysOfAnEarlierKeyring() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("keys");
+        KnapsackKeyring keyring = new KnapsackKeyring(directory, 1);
+        byte[] data = randomBytes(keys[0].getBlockSize(), 2);
+        keyring.rotate(keys[0]);
+        byte[] first = encrypt(keyring, data);
+        keyring.rotate(keys[1]);
+        byte[] second = encrypt(keyring, data);
+        assertTrue(Files.exists(directory.resolve(String.format("%016x.key", keys[0].getKeyId()))));
+
+        KnapsackKeyring restarted = new KnapsackKeyring(directory, 1);
+        assertNull(restarted.getCurrent());
+        assertArrayEquals(data, restarted.decrypt(ByteBuffer.wrap(second)));
+        assertArrayEquals(data, restarted.decrypt(ByteBuffer.wrap(first)));
+        assertEquals(2, restarted.getLoadCount());
+        assertEquals(1, restarted.getEvictionCount());
+    }
+
+    /**
+     * This method checks that a message of a key never rotated in is
+     * refused.
+     *
+     * @throws IOException if a key file cannot be written or read
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesUnknownKeys() throws IOException {
+        KnapsackKeyring keyring = new KnapsackKeyring(folder.getRoot().toPath(), 1);
+        keyring.rotate(keys[0]);
+        ByteBuffer out = ByteBuffer.allocate((int) CiphertextFormat.getMaxEncodedLength(keys[3], 1));
+        CiphertextFormat.encrypt(keys[3], new byte[1], 0, 1, out);
+        out.flip();
+        keyring.decrypt(out);
+    }
+
+    /**
+     * This method checks that a keyring without a key cannot encrypt.
+     *
+     * @throws IOException if the keyring directory cannot be created
+     */
+    @Test(expected = IllegalStateException.class)
+    public void refusesToEncryptWithoutAKey() throws IOException {
+        encrypt(new KnapsackKeyring(folder.getRoot().toPath(), 1), new byte[1]);
+    }
+
+    /**
+     * This method encrypts bytes into a message with the current key.
+     *
+     * @param keyring the keyring
+     * @param data the plaintext
+     * @return the message
+     */
+    private static byte[] encrypt(KnapsackKeyring keyring, byte[] data) {
+        ByteBuffer out = ByteBuffer.allocate((int) CiphertextFormat.getMaxEncodedLength(keys[0], data.length));
+        keyring.encrypt(data, 0, data.length, out);
+        byte[] bytes = new byte[out.position()];
+        out.flip();
+        out.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * This method returns random bytes.
+     *
+     * @param length the number of bytes
+     * @param seed the seed of the bytes
+     * @return the bytes
+     */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,107 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class checks that LatencyHistogram reads percentiles to the upper
+ * bound of their power of two bucket, and that the metrics register with
+ * JMX once however often they are registered.
+ *
+ * @author Anshu Anand
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * This method checks the count, mean and every percentile of a few
+     * known samples, one or two per bucket.
+     */
+    @Test
+    public void readsBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanNanos(), 0);
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        //buckets 0, 1, 1, 2, 2, 3 and 9
+        for (long nanos : new long[]{1, 2, 3, 4, 7, 8, 1000}) {
+            histogram.record(nanos);
+        }
+        assertEquals(7, histogram.getCount());
+        assertEquals(1025 / 7.0, histogram.getMeanNanos(), 1e-9);
+        assertEquals(1, histogram.getPercentileNanos(0));
+        assertEquals(1, histogram.getPercentileNanos(1 / 7.0));
+        assertEquals(3, histogram.getPercentileNanos(0.3));
+        assertEquals(7, histogram.getPercentileNanos(0.5));
+        assertEquals(7, histogram.getPercentileNanos(5 / 7.0));
+        assertEquals(15, histogram.getPercentileNanos(6 / 7.0));
+        assertEquals(1023, histogram.getPercentileNanos(0.99));
+        assertEquals(1023, histogram.getPercentileNanos(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(1));
+    }
+
+    /**
+     * This method checks that samples below 1 count as 1 and the largest
+     * long lands in the last bucket.
+     */
+    @Test
+    public void clampsTheEnds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(1, histogram.getMeanNanos(), 0);
+        assertEquals(1, histogram.getPercentileNanos(1));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(1));
+    }
+
+    /**
+     * This method checks on random samples that every percentile read is at
+     * least the exact percentile and less than twice it, the 0th being the
+     * smallest sample.
+     */
+    @Test
+    public void staysWithinAFactorOfTwo() {
+        Random random = new Random(1);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] samples = new long[1000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 1 + (long) Math.exp(random.nextDouble() * 25);
+            histogram.record(samples[i]);
+        }
+        Arrays.sort(samples);
+        for (double fraction : new double[]{0, 0.001, 0.1, 0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = samples[Math.max((int) Math.ceil(fraction * samples.length) - 1, 0)];
+            long read = histogram.getPercentileNanos(fraction);
+            assertTrue(fraction + ": " + read + " below " + exact, read >= exact);
+            assertTrue(fraction + ": " + read + " over twice " + exact, read <= 2 * exact - 1);
+        }
+    }
+
+    /**
+     * This method checks that registering the metrics again leaves the one
+     * registration in place.
+     *
+     * @throws Exception if JMX cannot be queried
+     */
+    @Test
+    public void registersOnce() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(KnapsackMetrics.OBJECT_NAME);
+        KnapsackMetrics.register();
+        KnapsackMetrics.register();
+        assertTrue(server.isRegistered(name));
+        assertEquals(1, server.queryNames(name, null).size());
+        long count = KnapsackMetrics.getInstance().getEncryptCount();
+        assertEquals(count, ((Number) server.getAttribute(name, "EncryptCount")).longValue());
+    }
+}
@@ -0,0 +1,140 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This class checks that a block decrypts to the bytes it was encrypted
+ * from, for knapsack lengths from 8 to 2048 elements, with the precomputed
+ * encryption table on and off, at short and full block lengths.
+ *
+ * @author Anshu Anand
+ */
+public class MerkleHellmanKnapsackCryptoProjectTest {
+
+    //keys shared by every test, generating them is the slow part
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        ParallelKeyGenerator generator = new ParallelKeyGenerator();
+        try {
+            keys = new MerkleHellmanKnapsackCryptoProject[]{
+                new MerkleHellmanKnapsackCryptoProject(parameters(8, false)),
+                new MerkleHellmanKnapsackCryptoProject(parameters(64, false)),
+                new MerkleHellmanKnapsackCryptoProject(parameters(64, true)),
+                new MerkleHellmanKnapsackCryptoProject(parameters(640, false)),
+                generator.generate(parameters(640, true)),
+                generator.generate(parameters(2048, false))
+            };
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks round trips of random bytes at every length near
+     * the ends of the block.
+     */
+    @Test
+    public void roundTripsShortAndFullBlocks() {
+        Random random = new Random(1);
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            int blockSize = crypto.getBlockSize();
+            for (int length : new int[]{0, 1, 2, blockSize / 2, blockSize - 1, blockSize}) {
+                //an 8 element key has one byte blocks
+                byte[] data = new byte[Math.min(length, blockSize)];
+                random.nextBytes(data);
+                assertRoundTrip(crypto, data);
+            }
+        }
+    }
+
+    /**
+     * This method checks round trips of blocks of all zero and all one bits,
+     * the empty and the full subset of the knapsack.
+     */
+    @Test
+    public void roundTripsEmptyAndFullSubsets() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            byte[] zeros = new byte[crypto.getBlockSize()];
+            assertEquals(BigInteger.ZERO, crypto.encryptBlock(zeros, 0, zeros.length));
+            assertRoundTrip(crypto, zeros);
+            byte[] ones = new byte[crypto.getBlockSize()];
+            Arrays.fill(ones, (byte) 0xff);
+            assertRoundTrip(crypto, ones);
+        }
+    }
+
+    /**
+     * This method checks that a block is read at its offset, whatever lies
+     * around it.
+     */
+    @Test
+    public void encryptsAtAnOffset() {
+        Random random = new Random(2);
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            int blockSize = crypto.getBlockSize();
+            byte[] around = new byte[blockSize + 7];
+            random.nextBytes(around);
+            byte[] data = Arrays.copyOfRange(around, 3, 3 + blockSize);
+            assertEquals(crypto.encryptBlock(data, 0, blockSize), crypto.encryptBlock(around, 3, blockSize));
+            byte[] plain = new byte[blockSize + 5];
+            assertEquals(blockSize, crypto.decryptBlock(crypto.encryptBlock(data, 0, blockSize), plain, 5));
+            assertArrayEquals(data, Arrays.copyOfRange(plain, 5, 5 + blockSize));
+        }
+    }
+
+    /**
+     * This method checks that a block longer than the block size is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesBlocksOverTheBlockSize() {
+        MerkleHellmanKnapsackCryptoProject crypto = keys[0];
+        crypto.encryptBlock(new byte[crypto.getBlockSize() + 1], 0, crypto.getBlockSize() + 1);
+    }
+
+    /**
+     * This method encrypts and decrypts bytes as one block and checks that
+     * they come back, followed by zero bytes up to the block size.
+     *
+     * @param crypto the key
+     * @param data the plaintext
+     */
+    private static void assertRoundTrip(MerkleHellmanKnapsackCryptoProject crypto, byte[] data) {
+        BigInteger encrypted = crypto.encryptBlock(data, 0, data.length);
+        byte[] plain = new byte[crypto.getBlockSize()];
+        assertEquals(crypto.getBlockSize(), crypto.decryptBlock(encrypted, plain, 0));
+        String key = crypto.getParameters() + ", " + data.length + " bytes";
+        assertArrayEquals(key, data, Arrays.copyOf(plain, data.length));
+        assertArrayEquals(key, new byte[plain.length - data.length], Arrays.copyOfRange(plain, data.length, plain.length));
+    }
+
+    /**
+     * This method returns the parameters of a key.
+     *
+     * @param size the knapsack length
+     * @param precomputed true for the precomputed encryption table
+     * @return the parameters
+     */
+    static KnapsackParameters parameters(int size, boolean precomputed) {
+        return new KnapsackParameters.Builder().knapsackLength(size).precomputedEncryption(precomputed).build();
+    }
+}
@@ -0,0 +1,177 @@
+package merkle.hellman.knapsack.crypto.project;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * This class checks that text goes through encryptData and decryptData, one
+ * at a time and in batches, as the UTF-8 bytes String.getBytes writes: one
+ * to four bytes per character, and '?' for a surrogate without its pair.
+ *
+ * @author Anshu Anand
+ */
+public class Utf8Test {
+
+    //a key with eight byte blocks and one with the precomputed table
+    private static MerkleHellmanKnapsackCryptoProject[] keys;
+
+    //one, two, three and four byte characters, alone and mixed
+    private final static String[] TEXTS = {
+        "", "a", "\u00e9", "\u20ac", "\ud83d\ude00", "a\u00e9\u20ac", "\u00e9\ud83d\ude00", "\u00e9\u00e9\u00e9\u00e9"
+    };
+
+    //surrogates without their pair, each written as '?'
+    private final static String[] LONE_SURROGATES = {
+        "\ud83d", "\ude00", "ab\ud83d", "\ud83da", "\ude00\ud83d", "\ud83d\ud83d\ude00"
+    };
+
+    /**
+     * This method generates the keys once for the whole class.
+     */
+    @BeforeClass
+    public static void generateKeys() {
+        keys = new MerkleHellmanKnapsackCryptoProject[]{
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(64, false)),
+            new MerkleHellmanKnapsackCryptoProject(MerkleHellmanKnapsackCryptoProjectTest.parameters(640, true))
+        };
+    }
+
+    /**
+     * This method releases the keys.
+     */
+    @AfterClass
+    public static void releaseKeys() {
+        keys = null;
+    }
+
+    /**
+     * This method checks that toBytes writes the bytes of String.getBytes at
+     * its offset, for whole characters and lone surrogates.
+     */
+    @Test
+    public void writesTheBytesOfGetBytes() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            for (String text : concat(TEXTS, LONE_SURROGATES)) {
+                byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+                byte[] block = new byte[crypto.getBlockSize() + 3];
+                Arrays.fill(block, (byte) 1);
+                assertEquals(text, expected.length, crypto.toBytes(text, block, 3));
+                assertArrayEquals(text, expected, Arrays.copyOfRange(block, 3, 3 + expected.length));
+                assertEquals(text, 1, block[2]);
+            }
+        }
+    }
+
+    /**
+     * This method checks that multi byte characters come back, and that a
+     * surrogate without its pair comes back as '?'.
+     */
+    @Test
+    public void roundTripsText() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            for (String text : TEXTS) {
+                assertEquals(text, crypto.decryptData(crypto.encryptData(text)));
+            }
+            for (String text : LONE_SURROGATES) {
+                assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                        crypto.decryptData(crypto.encryptData(text)));
+            }
+            assertEquals("?", crypto.decryptData(crypto.encryptData("\ud83d")));
+            assertEquals("ab?", crypto.decryptData(crypto.encryptData("ab\ud83d")));
+        }
+    }
+
+    /**
+     * This method checks that the batch forms and the cache encrypt like
+     * encryptData and decrypt like decryptData.
+     */
+    @Test
+    public void roundTripsBatches() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            List<String> texts = Arrays.asList(concat(TEXTS, LONE_SURROGATES));
+            BigInteger[] encrypted = crypto.encryptBatch(texts);
+            EncryptionCache cache = new EncryptionCache(4);
+            List<BigInteger> expected = new ArrayList<BigInteger>();
+            for (int i = 0; i < texts.size(); i++) {
+                assertEquals(texts.get(i), crypto.encryptData(texts.get(i)), encrypted[i]);
+                assertEquals(texts.get(i), encrypted[i], cache.encryptData(crypto, texts.get(i)));
+                expected.add(encrypted[i]);
+            }
+            String[] decrypted = crypto.decryptBatch(expected);
+            for (int i = 0; i < texts.size(); i++) {
+                assertEquals(crypto.decryptData(encrypted[i]), decrypted[i]);
+            }
+        }
+    }
+
+    /**
+     * This method checks that text of exactly the block size in UTF-8 is
+     * encrypted, and text one byte longer is refused, also when the last
+     * character would only partly fit.
+     */
+    @Test
+    public void fillsTheBlockExactly() {
+        for (MerkleHellmanKnapsackCryptoProject crypto : keys) {
+            int blockSize = crypto.getBlockSize();
+            StringBuilder full = new StringBuilder();
+            for (int i = 0; i < blockSize / 4; i++) {
+                full.append("\ud83d\ude00");
+            }
+            for (int i = 0; i < blockSize % 4; i++) {
+                full.append('a');
+            }
+            assertEquals(blockSize, full.toString().getBytes(StandardCharsets.UTF_8).length);
+            assertEquals(full.toString(), crypto.decryptData(crypto.encryptData(full.toString())));
+            assertRefused(crypto, full + "a");
+            StringBuilder straddle = new StringBuilder();
+            for (int i = 0; i < blockSize - 1; i++) {
+                straddle.append('a');
+            }
+            assertRefused(crypto, straddle + "\u00e9");
+            assertRefused(crypto, straddle + "\u20ac");
+            assertRefused(crypto, straddle + "\ud83d\ude00");
+        }
+    }
+
+    /**
+     * This method checks that encryptData and encryptBatch both refuse a
+     * text longer than the block size in UTF-8.
+     *
+     * @param crypto the key
+     * @param text the text
+     */
+    private static void assertRefused(MerkleHellmanKnapsackCryptoProject crypto, String text) {
+        try {
+            crypto.encryptData(text);
+            fail("A text of " + text.getBytes(StandardCharsets.UTF_8).length + " bytes was encrypted.");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            crypto.encryptBatch(Arrays.asList(text));
+            fail("A text of " + text.getBytes(StandardCharsets.UTF_8).length + " bytes was encrypted.");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * This method returns two arrays of texts one after the other.
+     *
+     * @param first the first texts
+     * @param second the texts that follow
+     * @return the texts
+     */
+    private static String[] concat(String[] first, String[] second) {
+        String[] texts = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, texts, first.length, second.length);
+        return texts;
+    }
+}